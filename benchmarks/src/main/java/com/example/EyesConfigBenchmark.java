@@ -0,0 +1,85 @@
+package com.example;
+
+import com.applitools.eyes.config.Configuration;
+import com.applitools.eyes.visualgrid.model.DeviceName;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning {@code eyes-config.yml} into a {@link Configuration}: the YAML parse with environment
+ * resolution, the browser matrix and the enum lookups it is built from.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EyesConfigBenchmark {
+
+    @Param({"4", "100", "1000"})
+    private int matrixSize;
+
+    private byte[] yaml;
+    private Map<String, Object> matrix;
+    private String[] deviceNames;
+    private int nextDevice;
+
+    @Setup
+    public void setUp() {
+        try (InputStream in = EyesConfigBenchmark.class.getResourceAsStream("/eyes-config-benchmark.yml")) {
+            yaml = Objects.requireNonNull(in, "eyes-config-benchmark.yml").readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        List<Map<String, Object>> browsersInfo = new ArrayList<>();
+        DeviceName[] devices = DeviceName.values();
+        for (int i = 0; i < matrixSize; i++) {
+            Map<String, Object> entry = new HashMap<>();
+            if (i % 2 == 0) {
+                entry.put("browserType", i % 4 == 0 ? "chrome" : "firefox");
+                entry.put("width", 800 + i);
+                entry.put("height", 600 + i);
+            } else {
+                entry.put("deviceName", devices[i % devices.length].name());
+                entry.put("screenOrientation", i % 3 == 0 ? "landscape" : "portrait");
+            }
+            browsersInfo.add(entry);
+        }
+        matrix = Map.of("browsersInfo", browsersInfo);
+
+        // Mixed case, the way people write them in the YAML file
+        deviceNames = new String[devices.length];
+        for (int i = 0; i < devices.length; i++) {
+            String name = devices[i].name();
+            deviceNames[i] = i % 2 == 0 ? name.toLowerCase(Locale.ROOT) : name;
+        }
+    }
+
+    @Benchmark
+    public EyesConfig parseConfig() {
+        return EyesConfig.parse(new ByteArrayInputStream(yaml), "benchmark");
+    }
+
+    @Benchmark
+    public Configuration addBrowserMatrix() {
+        Configuration config = new Configuration();
+        EyesConfig.addBrowsersAndDevicesInConfiguration(matrix, config);
+        return config;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public DeviceName getEnumIgnoreCase() {
+        String name = deviceNames[nextDevice];
+        nextDevice = (nextDevice + 1) % deviceNames.length;
+        return EyesConfig.getEnumIgnoreCase(DeviceName.class, name);
+    }
+}
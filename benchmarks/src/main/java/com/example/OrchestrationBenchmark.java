@@ -0,0 +1,78 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of running the {@link ParallelTests} flows through {@link TestScheduler}: browser leases,
+ * limiter, watchdog, Eyes lifecycle and the check pipeline, with Applitools disabled and stubbed browsers.
+ * Whatever a run costs on top of this is spent in the browser and in Applitools.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrchestrationBenchmark {
+
+    @Param({"1", "4", "16"})
+    private int parallelism;
+
+    @Param({"32"})
+    private int tests;
+
+    private BrowserPool browserPool;
+    private List<TestCase> testCases;
+    private PrintStream originalOut;
+
+    @Setup
+    public void setUp() throws IOException {
+        Path config = Files.createTempFile("eyes-config-benchmark", ".yml");
+        try (InputStream in = OrchestrationBenchmark.class.getResourceAsStream("/eyes-config-benchmark.yml")) {
+            Files.copy(Objects.requireNonNull(in, "eyes-config-benchmark.yml"), config, StandardCopyOption.REPLACE_EXISTING);
+        }
+        config.toFile().deleteOnExit();
+        System.setProperty("eyes.config", config.toString());
+        System.setProperty("visual.local", "false");
+        System.setProperty("metrics.dir", Files.createTempDirectory("orchestration-benchmark").toString());
+
+        List<TestCase> flows = TestRegistry.discover(ParallelTests.class);
+        testCases = new ArrayList<>(tests);
+        for (int i = 0; i < tests; i++) {
+            TestCase flow = flows.get(i % flows.size());
+            testCases.add(new TestCase(flow.getName() + " #" + i, 0, flow::run));
+        }
+
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        ApplitoolsUtil.startBatch();
+        browserPool = new BrowserPool(parallelism, Integer.MAX_VALUE, true, null, StubBrowsers::browser);
+    }
+
+    @TearDown
+    public void tearDown() {
+        try {
+            browserPool.close();
+            ApplitoolsUtil.closeRunnerAndBatch();
+        } finally {
+            System.setOut(originalOut);
+        }
+    }
+
+    @Benchmark
+    public List<TestRun> runSuite() {
+        return new TestScheduler(browserPool, "Orchestration Benchmark", parallelism, 60).run(testCases);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example;
+
+import com.applitools.eyes.TestResultContainer;
+import com.applitools.eyes.TestResults;
+import com.applitools.eyes.TestResultsStatus;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reporting a batch: every synthetic {@link TestResultContainer} is printed and streamed to the
+ * JUnit XML and JSON reports by {@link ResultAggregator}. Console output goes to a null stream, so the
+ * numbers show the harness, not the terminal.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResultAggregatorBenchmark {
+
+    @Param({"1000", "10000"})
+    private int results;
+
+    private List<TestResultContainer> containers;
+    private Path directory;
+    private PrintStream originalOut;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("result-aggregator-benchmark");
+        containers = new ArrayList<>(results);
+        for (int i = 0; i < results; i++) {
+            if (i % 100 == 99) {
+                containers.add(new TestResultContainer(null, null, new IllegalStateException("Synthetic failure " + i)));
+                continue;
+            }
+            TestResults result = new TestResults();
+            result.setName("Synthetic Test " + i);
+            result.setSteps(5);
+            result.setMatches(i % 10 == 0 ? 4 : 5);
+            result.setMismatches(i % 10 == 0 ? 1 : 0);
+            result.setMissing(0);
+            result.setStatus(i % 10 == 0 ? TestResultsStatus.Unresolved : TestResultsStatus.Passed);
+            result.setUrl("https://eyes.applitools.com/app/batches/benchmark/" + i);
+            containers.add(new TestResultContainer(result, null, null));
+        }
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(originalOut);
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+            Files.delete(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Benchmark
+    public void aggregate() {
+        try (ResultAggregator aggregator = new ResultAggregator(directory, "benchmark", "Benchmark")) {
+            for (TestResultContainer container : containers) {
+                aggregator.accept(container);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example;
+
+import com.microsoft.playwright.Browser;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Browsers that do nothing, so the harness can be measured without launching Chromium or touching the network.
+ * <p>
+ * Every Playwright interface returned by a stub is itself a stub; other methods return empty or default values,
+ * and {@code isConnected()} returns {@code true}, so pooled browsers are never recycled as unhealthy.
+ */
+final class StubBrowsers {
+
+    private StubBrowsers() {
+    }
+
+    static Browser browser() {
+        return stub(Browser.class);
+    }
+
+    private static <T> T stub(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(StubBrowsers.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> invoke(proxy, method, args)));
+    }
+
+    private static Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Stub" + method.getDeclaringClass().getSimpleName();
+            case "isConnected":
+                return true;
+            default:
+                break;
+        }
+        Class<?> returnType = method.getReturnType();
+        if (returnType.isInterface() && returnType.getPackageName().startsWith("com.microsoft.playwright")) {
+            return stub(returnType);
+        }
+        if (returnType == boolean.class) {
+            return false;
+        }
+        if (returnType == int.class) {
+            return 0;
+        }
+        if (returnType == long.class) {
+            return 0L;
+        }
+        if (returnType == double.class) {
+            return 0.0;
+        }
+        if (returnType == String.class) {
+            return "";
+        }
+        if (returnType == byte[].class) {
+            return new byte[0];
+        }
+        if (returnType == List.class) {
+            return Collections.emptyList();
+        }
+        if (returnType == Map.class) {
+            return Collections.emptyMap();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,229 @@
+package com.example;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adjusts the limit of a {@link ConcurrencyLimiter} while tests run, additive-increase / multiplicative-decrease.
+ * <p>
+ * Every interval it samples the congestion signals: the mean latency of the Playwright steps compared with
+ * the best interval seen so far, the host CPU load, free physical memory (which the Chromium processes
+ * consume) and, when checkpoints are compared locally, the backlog of the check pipeline. Eyes checkpoints do
+ * not go through that pipeline, so with Applitools enabled the backlog is not sampled. If any signal is over its
+ * threshold the limit is cut by {@code decreaseFactor}; otherwise, if tests are waiting for a permit, it is
+ * raised by one.
+ * <p>
+ * The limit stays between {@code min} and the limiter's max concurrency, i.e. {@code tests.parallelism}, which
+ * also sizes the scheduler's threads and the browser pool. The controller cannot go above it, so it tunes the
+ * concurrency within that bound. Only browser flows are tuned: the Visual Grid runner's render concurrency
+ * ({@code applitools.testConcurrency}) is fixed when the runner is created, since the SDK cannot change it later.
+ */
+public class AdaptiveConcurrency implements AutoCloseable {
+
+    private static final String[] STEP_PHASES = {
+            PhaseTimings.PAGE_NAVIGATE, PhaseTimings.PAGE_CLICK, PhaseTimings.PAGE_CHECK, PhaseTimings.PAGE_GO_BACK
+    };
+
+    /**
+     * How much the best step latency may rise per interval, so one unusually fast interval does not
+     * count as congestion forever.
+     */
+    private static final double BASELINE_DRIFT = 1.05;
+
+    private final ConcurrencyLimiter limiter;
+    private final int min;
+    private final double decreaseFactor;
+    private final double latencyTolerance;
+    private final double maxCpuLoad;
+    private final double minFreeMemory;
+    private final double maxBacklog;
+    private final boolean sampleBacklog;
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    private final ScheduledExecutorService sampler;
+
+    private long lastStepCount;
+    private long lastStepMicros;
+    private double bestStepMicros = Double.MAX_VALUE;
+    private int increases;
+    private int decreases;
+    private int lowestLimit;
+    private int highestLimit;
+
+    public AdaptiveConcurrency(ConcurrencyLimiter limiter, int initial, int min, long intervalMillis, double decreaseFactor,
+                               double latencyTolerance, double maxCpuLoad, double minFreeMemory, double maxBacklog) {
+        if (min < 1 || decreaseFactor <= 0 || decreaseFactor >= 1) {
+            throw new IllegalArgumentException(String.format(
+                    "Adaptive concurrency needs min >= 1 and 0 < decreaseFactor < 1, but got: %d, %s", min, decreaseFactor));
+        }
+        this.limiter = limiter;
+        this.min = Math.min(min, limiter.getMaxConcurrency());
+        this.decreaseFactor = decreaseFactor;
+        this.latencyTolerance = latencyTolerance;
+        this.maxCpuLoad = maxCpuLoad;
+        this.minFreeMemory = minFreeMemory;
+        this.maxBacklog = maxBacklog;
+        this.sampleBacklog = ApplitoolsUtil.comparesLocally();
+        int start = limiter.setLimit(Math.max(this.min, initial));
+        this.lowestLimit = start;
+        this.highestLimit = start;
+        this.sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "adaptive-concurrency");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleWithFixedDelay(this::adjust, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        TestLog.info("Adaptive concurrency: starting at %d, between %d and %d, %s", start, this.min, limiter.getMaxConcurrency(),
+                sampleBacklog ? "sampling the checkpoint backlog" : "not sampling the checkpoint backlog, checkpoints go to Applitools");
+    }
+
+    /**
+     * Starts adapting the limiter if the {@code tests.adaptive} system property is {@code true}, or returns
+     * {@code null} if it is not. The other settings are read from {@code tests.adaptive.*} properties.
+     */
+    public static AdaptiveConcurrency fromSystemProperties(ConcurrencyLimiter limiter) {
+        if (!Boolean.getBoolean("tests.adaptive")) {
+            return null;
+        }
+        return new AdaptiveConcurrency(limiter,
+                Integer.getInteger("tests.adaptive.initial", Math.max(1, Runtime.getRuntime().availableProcessors() / 4)),
+                Integer.getInteger("tests.adaptive.min", 1),
+                Long.getLong("tests.adaptive.intervalMillis", 2000),
+                doubleProperty("tests.adaptive.decreaseFactor", 0.7),
+                doubleProperty("tests.adaptive.latencyTolerance", 2.0),
+                doubleProperty("tests.adaptive.maxCpuLoad", 0.85),
+                doubleProperty("tests.adaptive.minFreeMemory", 0.1),
+                doubleProperty("tests.adaptive.maxBacklog", 0.5));
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        return value == null || value.isBlank() ? defaultValue : Double.parseDouble(value.trim());
+    }
+
+    @Override
+    public void close() {
+        sampler.shutdownNow();
+        try {
+            sampler.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        printStats();
+    }
+
+    public void printStats() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n=== Adaptive Concurrency Stats ===\n");
+        sb.append("\tFinal Limit       : ").append(limiter.getLimit()).append("\n");
+        sb.append("\tLimit Range       : ").append(lowestLimit).append(" - ").append(highestLimit).append("\n");
+        sb.append("\tIncreases         : ").append(increases).append("\n");
+        sb.append("\tDecreases         : ").append(decreases).append("\n");
+        sb.append("\tBest Step Latency : ").append(bestStepMicros >= Double.MAX_VALUE ? "-" : format(bestStepMicros / 1000)).append(" ms\n");
+        sb.append("==========================================================");
+        TestLog.info(sb.toString());
+    }
+
+    private void adjust() {
+        try {
+            List<String> congestion = sampleCongestion();
+            int limit = limiter.getLimit();
+            int next = limit;
+            if (!congestion.isEmpty()) {
+                next = Math.max(min, (int) Math.floor(limit * decreaseFactor));
+            } else if (limiter.getWaiting() > 0) {
+                next = limit + 1;
+            }
+            next = limiter.setLimit(next);
+            if (next < limit) {
+                decreases++;
+                TestLog.info("Adaptive concurrency: %d -> %d (%s)", limit, next, String.join(", ", congestion));
+            } else if (next > limit) {
+                increases++;
+                TestLog.info("Adaptive concurrency: %d -> %d (%d test(s) waiting)", limit, next, limiter.getWaiting());
+            }
+            lowestLimit = Math.min(lowestLimit, next);
+            highestLimit = Math.max(highestLimit, next);
+        } catch (RuntimeException e) {
+            // Never let a failed sample stop the sampler
+            TestLog.error("Adaptive concurrency failed to sample the host: %s", e);
+        }
+    }
+
+    private List<String> sampleCongestion() {
+        List<String> congestion = new ArrayList<>();
+
+        double stepMicros = sampleStepLatency();
+        if (stepMicros > 0) {
+            bestStepMicros = Math.min(stepMicros, bestStepMicros * BASELINE_DRIFT);
+            if (stepMicros > bestStepMicros * latencyTolerance) {
+                congestion.add("step latency " + format(stepMicros / 1000) + " ms vs best " + format(bestStepMicros / 1000) + " ms");
+            }
+        }
+
+        double cpuLoad = cpuLoad();
+        if (cpuLoad > maxCpuLoad) {
+            congestion.add("CPU load " + format(cpuLoad * 100) + "%");
+        }
+
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            com.sun.management.OperatingSystemMXBean hostOs = (com.sun.management.OperatingSystemMXBean) os;
+            long total = hostOs.getTotalMemorySize();
+            double free = total > 0 ? (double) hostOs.getFreeMemorySize() / total : 1;
+            if (free < minFreeMemory) {
+                congestion.add("free memory " + format(free * 100) + "%");
+            }
+        }
+
+        if (sampleBacklog) {
+            double backlog = ApplitoolsUtil.getCheckBacklog();
+            if (backlog > maxBacklog) {
+                congestion.add("checkpoint backlog " + format(backlog * 100) + "%");
+            }
+        }
+        return congestion;
+    }
+
+    /**
+     * @return the mean latency in microseconds of the steps finished since the last sample, or 0 if none finished
+     */
+    private double sampleStepLatency() {
+        long count = 0;
+        long micros = 0;
+        for (String phase : STEP_PHASES) {
+            LatencyHistogram histogram = PhaseTimings.get(phase);
+            if (histogram != null) {
+                count += histogram.getCount();
+                micros += histogram.getTotalMicros();
+            }
+        }
+        long steps = count - lastStepCount;
+        long stepMicros = micros - lastStepMicros;
+        lastStepCount = count;
+        lastStepMicros = micros;
+        return steps > 0 ? (double) stepMicros / steps : 0;
+    }
+
+    /**
+     * @return the host CPU load from 0 to 1, from the JVM if it can tell, otherwise from the load average
+     */
+    private double cpuLoad() {
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            double load = ((com.sun.management.OperatingSystemMXBean) os).getCpuLoad();
+            if (load >= 0) {
+                return load;
+            }
+        }
+        double loadAverage = os.getSystemLoadAverage();
+        return loadAverage < 0 ? 0 : loadAverage / os.getAvailableProcessors();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+}
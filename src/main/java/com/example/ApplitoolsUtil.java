@@ -3,254 +3,491 @@ package com.example;
 import com.applitools.eyes.*;
 import com.applitools.eyes.config.Configuration;
 import com.applitools.eyes.playwright.Eyes;
-import com.applitools.eyes.playwright.visualgrid.VisualGridRunner;
-import com.applitools.eyes.visualgrid.BrowserType;
-import com.applitools.eyes.visualgrid.model.DeviceName;
 import com.applitools.eyes.visualgrid.model.RenderBrowserInfo;
-import com.applitools.eyes.visualgrid.model.ScreenOrientation;
 import com.microsoft.playwright.Page;
-import org.yaml.snakeyaml.Yaml;
+import com.microsoft.playwright.options.ViewportSize;
 
-import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 public class ApplitoolsUtil {
 
-    private static BatchInfo batch = null;
-    private static final ThreadLocal<Eyes> threadLocalEyes = new ThreadLocal<>();
-    private static final ThreadLocal<VisualGridRunner> threadLocalRunner = new ThreadLocal<>();
-
-    public static void initEyes(Page page, String appName, String testName, boolean isParallelExecution) {
-        System.out.printf("Initialize Eyes for test '%s' ...%n", testName);
-        VisualGridRunner runner = getVisualGridRunner(testName, isParallelExecution);
+    private static final String BATCH_NAME = "Playwright-Java tests";
+    private static final long CHECKS_AWAIT_TIMEOUT_SECONDS = Long.getLong("checks.awaitTimeoutSeconds", 120);
+    private static final Object runnerLock = new Object();
+
+    private static volatile CheckPipeline checkPipeline = null;
+    private static volatile LocalVisualDiff localVisualDiff = null;
+    private static volatile CheckpointCache checkpointCache = null;
+    private static volatile boolean checkpointCacheResolved = false;
+    private static volatile MatchLevel matchLevelOverride = null;
+    private static final ThreadLocal<TestSession> threadLocalSession = new ThreadLocal<>();
+    // Open sessions by the thread running their test, so a stopped run can abort them from another thread
+    private static final Map<Thread, TestSession> openSessions = new ConcurrentHashMap<>();
+
+    /**
+     * State of the test running on the current thread.
+     */
+    private static final class TestSession {
+
+        private final String appName;
+        private final String testName;
+        private final Page page;
+        private final BatchManager.Suite suite;
+        private final Eyes eyes;
+        private final Configuration config;
+        // Only set when checkpoints are compared locally through the check pipeline
+        private final CheckPipeline.Tracker tracker;
+        private final List<String> failedChecks = new ArrayList<>();
+        // Claimed by whichever closes or aborts the Eyes first, so they are never both closed and aborted
+        private final AtomicBoolean ended = new AtomicBoolean();
+        private int steps;
+
+        private TestSession(String appName, String testName, Page page, BatchManager.Suite suite, Eyes eyes,
+                            Configuration config, CheckPipeline.Tracker tracker) {
+            this.appName = appName;
+            this.testName = testName;
+            this.page = page;
+            this.suite = suite;
+            this.eyes = eyes;
+            this.config = config;
+            this.tracker = tracker;
+        }
+    }
 
-        Eyes eyes = new Eyes(runner);
-        System.out.printf("Creating Eyes for '%s'%n", testName);
-        eyes.setConfiguration(loadConfig(testName));
-        threadLocalEyes.set(eyes);
+    public static void initEyes(Page page, String appName, String testName) {
+        long start = System.nanoTime();
+        TestLog.info("Initialize Eyes for test '%s' ...", testName);
+        BatchManager.Suite suite = BatchManager.forApp(appName);
+        Eyes eyes = new Eyes(suite.getRunner());
+        TestLog.info("Creating Eyes for '%s'", testName);
+        Configuration config = loadConfig(suite.getBatch(), testName);
+        eyes.setConfiguration(config);
+        CheckPipeline.Tracker tracker = getLocalVisualDiff() != null ? getCheckPipeline().newTracker(testName) : null;
+        TestSession session = new TestSession(appName, testName, page, suite, eyes, config, tracker);
+        threadLocalSession.set(session);
         eyes.open(page, appName, testName);
+        openSessions.put(Thread.currentThread(), session);
+        PhaseTimings.record(PhaseTimings.EYES_OPEN, start);
     }
 
     public static Eyes getEyes() {
-        return threadLocalEyes.get();
-    }
-
-    public static void closeEyes(boolean isParallelExecution) {
-        Eyes eyes = threadLocalEyes.get();
-        if (eyes != null) {
-            String testName = eyes.getTestName();
-            eyes.closeAsync();
-            printTestResults();
-            threadLocalEyes.remove();
-            if (isParallelExecution) {
-                closeRunner(String.format("Closing Visual Grid runner for test: '%s'%n", testName));
-            }
+        TestSession session = threadLocalSession.get();
+        return session != null ? session.eyes : null;
+    }
+
+    /**
+     * Runs a visual checkpoint for the current thread's test and counts it as a step of that test.
+     * When Applitools is disabled, the checkpoint is validated by {@link LocalVisualDiff} instead, in the background
+     * through the {@link CheckPipeline}. Eyes checkpoints run on the test thread: the SDK captures the DOM and hands
+     * it to its own render queue in one call, so there is no separate submit stage to queue.
+     * A failing checkpoint does not stop the test; it is reported by {@link #closeEyes()}.
+     * A cancelled test stops here instead, see {@link TestScheduler#throwIfCancelled()}.
+     */
+    public static void check(String name, CheckTarget target) {
+        TestSession session = threadLocalSession.get();
+        if (session == null) {
+            throw new IllegalStateException("Eyes are not initialized for this thread, call initEyes first");
         }
+        TestScheduler.throwIfCancelled();
+        Flow.checkNotInSetup(name);
+        session.steps++;
+        long start = System.nanoTime();
+        LocalVisualDiff localDiff = getLocalVisualDiff();
+        CheckpointCache cache = getCheckpointCache();
+        if (localDiff != null) {
+            getCheckPipeline().check(session.tracker, name, () -> captureForLocalDiff(localDiff, cache, session, name, target));
+        } else {
+            checkWithEyes(session, name, target);
+        }
+        PhaseTimings.record(PhaseTimings.EYES_CHECK, start, name);
     }
 
-    public static void startBatch() {
-        if (null == batch) {
-            System.out.println("Starting Batch ...");
-            batch = new BatchInfo("Playwright-Java tests");
-            batch.setNotifyOnCompletion(false);
+    private static void checkWithEyes(TestSession session, String name, CheckTarget target) {
+        try {
+            session.eyes.check(name, target.toEyesSettings());
+        } catch (RuntimeException e) {
+            session.failedChecks.add(name + ": " + e);
+            TestLog.error("Checkpoint '%s' of test '%s' failed: %s", name, session.testName, e);
         }
     }
 
-    public static void closeRunnerAndBatch() {
-        closeRunner("Closing Visual Grid runner");
-        closeBatch();
+    /**
+     * @return the number of checkpoints run by the current thread's test since {@link #initEyes}
+     */
+    public static int getStepCount() {
+        TestSession session = threadLocalSession.get();
+        return session != null ? session.steps : 0;
     }
 
-    private static void printPrettyTestResults(TestResultsSummary summary) {
-        int passed = 0, unresolved = 0, failed = 0, exceptions = 0;
-        int matches = 0, mismatches = 0, missing = 0;
+    /**
+     * Closes the Eyes of the current thread without waiting for its renders. Its results, one per browser and
+     * device, are written to the suite's reports with the batch's results, see {@link BatchManager.Suite}.
+     *
+     * @throws IllegalStateException if any checkpoint of the test failed
+     */
+    public static void closeEyes() {
+        closeEyes(false);
+    }
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("\n=== Applitools Test Results Summary ===\n");
-
-        for (TestResultContainer container : summary.getAllResults()) {
-            TestResults result = container.getTestResults();
-            RenderBrowserInfo browserInfo = container.getBrowserInfo();
-
-            if (container.getException() != null) {
-                exceptions++;
-                sb.append("\t❌ Exception occurred during test:\n");
-                sb.append("\t").append(container.getException().getMessage()).append("\n");
-                sb.append("\t----------------------------------------\n");
-                continue;
+    /**
+     * Closes the Eyes of the current thread.
+     *
+     * @param awaitResults whether to wait for the test's renders, e.g. for a critical test that has to
+     *                     report a visual mismatch before the run goes on
+     * @throws IllegalStateException if any checkpoint of the test failed, or if the awaited results have mismatches
+     */
+    public static void closeEyes(boolean awaitResults) {
+        TestSession session = threadLocalSession.get();
+        if (session != null && !session.ended.compareAndSet(false, true)) {
+            // Aborted by abortEyes(Thread) because the run was stopped, so there is nothing to close or report
+            endSession();
+            return;
+        }
+        if (session != null) {
+            long start = System.nanoTime();
+            RuntimeException checkFailures = null;
+            try {
+                awaitChecks(session);
+            } catch (IllegalStateException e) {
+                checkFailures = e;
             }
-
-            if (result != null) {
-                if (result.isPassed()) {
-                    passed++;
-                } else if (result.isNew()) {
-                    unresolved++;
-                } else if (result.isDifferent() || result.isAborted()) {
-                    failed++;
+            TestResults results = null;
+            try {
+                // Either way the per-target results are reported from the runner, with the batch's results
+                if (awaitResults) {
+                    results = session.eyes.close(false);
+                } else {
+                    session.eyes.closeAsync();
                 }
+            } catch (RuntimeException e) {
+                session.suite.reportCloseFailure(e);
+                throw e;
+            } finally {
+                endSession();
+                PhaseTimings.record(PhaseTimings.EYES_CLOSE, start);
+            }
+            if (checkFailures != null) {
+                throw checkFailures;
+            }
+            if (results != null && (results.isDifferent() || results.getMismatches() > 0)) {
+                throw new IllegalStateException(String.format("Test '%s' has %d visual mismatch(es), see %s",
+                        session.testName, results.getMismatches(), results.getUrl()));
+            }
+        }
+    }
 
-                matches += result.getMatches();
-                mismatches += result.getMismatches();
-                missing += result.getMissing();
-
-                sb.append("\tTest Name     : ").append(result.getName()).append("\n");
-
-                if (browserInfo != null) {
-                    if (browserInfo.getEmulationInfo() != null && browserInfo.getEmulationInfo().getDeviceName() != null) {
-                        sb.append("\tDevice        : ").append(browserInfo.getEmulationInfo().getDeviceName())
-                                .append(" [").append(browserInfo.getEmulationInfo().getScreenOrientation()).append("]\n");
-                    } else {
-                        sb.append("\tBrowser       : ").append(browserInfo.getBrowserType().getName())
-                                .append(" @ ").append(browserInfo.getPlatform()).append("\n");
-
-                        RectangleSize vp = browserInfo.getViewportSize();
-                        if (vp != null) {
-                            sb.append("\tViewport Size : ").append(vp.getWidth()).append("x").append(vp.getHeight()).append("\n");
-                        } else {
-                            sb.append("\tViewport Size : not set\n");
-                        }
-                    }
-                }
+    /**
+     * Waits for the test's checkpoints still in the check pipeline.
+     *
+     * @throws IllegalStateException listing the failed checkpoints, if any failed
+     */
+    private static void awaitChecks(TestSession session) {
+        if (session.tracker != null) {
+            getCheckPipeline().awaitCompletion(session.tracker, TimeUnit.SECONDS.toMillis(CHECKS_AWAIT_TIMEOUT_SECONDS));
+        } else if (!session.failedChecks.isEmpty()) {
+            throw new IllegalStateException(String.format("%d checkpoint(s) of test '%s' failed:%n\t%s",
+                    session.failedChecks.size(), session.testName, String.join("\n\t", session.failedChecks)));
+        }
+    }
 
-                sb.append("\tSteps         : ").append(result.getSteps()).append("\n");
-                sb.append("\tMatches       : ").append(result.getMatches()).append("\n");
-                sb.append("\tMismatches    : ").append(result.getMismatches()).append("\n");
-                sb.append("\tMissing       : ").append(result.getMissing()).append("\n");
-                sb.append("\tResult URL    : ").append(result.getUrl()).append("\n");
-                sb.append("\t-------------------------------------------------------------------------------\n");
+    /**
+     * Drops the checkpoints still waiting to be compared locally, e.g. because the run is being stopped early.
+     * Checkpoints already handed to the Visual Grid runner are not affected.
+     */
+    public static void cancelPendingChecks(String reason) {
+        CheckPipeline current = checkPipeline;
+        if (current != null) {
+            int dropped = current.cancelPending(reason);
+            if (dropped > 0) {
+                TestLog.info("Dropped %d pending checkpoint(s): %s", dropped, reason);
             }
         }
+    }
 
-        sb.append("Summary:\n");
-        sb.append("\tTotal Tests   : ").append(summary.getAllResults().length).append("\n");
-        sb.append("\tPassed        : ").append(passed).append("\n");
-        sb.append("\tUnresolved    : ").append(unresolved).append("\n");
-        sb.append("\tFailed        : ").append(failed).append("\n");
-        sb.append("\tExceptions    : ").append(exceptions).append("\n");
-        sb.append("\tMatches       : ").append(matches).append("\n");
-        sb.append("\tMismatches    : ").append(mismatches).append("\n");
-        sb.append("\tMissing       : ").append(missing).append("\n");
-        sb.append("==========================================================");
+    /**
+     * Aborts the Eyes of the current thread, e.g. for a test that was cancelled.
+     */
+    public static void abortEyes() {
+        TestSession session = threadLocalSession.get();
+        if (session != null) {
+            try {
+                if (session.ended.compareAndSet(false, true)) {
+                    session.eyes.abortAsync();
+                }
+            } finally {
+                endSession();
+            }
+        }
+    }
 
-        System.out.println(sb.toString());
+    /**
+     * Aborts the open Eyes of the test running on the given thread right away, e.g. when the run is stopped early,
+     * so the runner drops its queued renders instead of the run waiting for them. The test's thread still has to
+     * end its session with {@link #abortEyes()} or {@link #closeEyes()}, which then do nothing else.
+     */
+    public static void abortEyes(Thread testThread) {
+        TestSession session = openSessions.get(testThread);
+        if (session != null && session.ended.compareAndSet(false, true)) {
+            try {
+                session.eyes.abortAsync();
+                TestLog.info("Aborted the Eyes of test '%s'", session.testName);
+            } catch (RuntimeException e) {
+                TestLog.error("Failed to abort the Eyes of test '%s': %s", session.testName, e);
+            }
+        }
     }
 
-    private static void printTestResults() {
-        TestResultsSummary summary = threadLocalRunner.get().getAllTestResults(false);
-        printPrettyTestResults(summary);
+    private static void endSession() {
+        threadLocalSession.remove();
+        openSessions.remove(Thread.currentThread());
     }
 
-    private static VisualGridRunner getVisualGridRunner(String testName, boolean isParallelExecution) {
-        VisualGridRunner runner = threadLocalRunner.get();
-        if (null == runner) {
-            if (isParallelExecution) {
-                System.out.printf("Initializing VisualGrid Runner for executing test: '%s' in Parallel%n", testName);
-            } else {
-                System.out.println("Initializing VisualGrid Runner for executing tests in Sequence");
+    private static CheckPipeline.Submission captureForLocalDiff(LocalVisualDiff localDiff, CheckpointCache cache,
+                                                                TestSession session, String name, CheckTarget target) {
+        byte[] screenshot = target.screenshot(session.page);
+        String key = cache != null ? cache.key(session.page, target, screenshot, cacheContext(session)) : null;
+        if (key != null && isAlreadyValidated(cache, key, session, name)) {
+            return null;
+        }
+        ViewportSize viewport = session.page.viewportSize();
+        int width = viewport != null ? viewport.width : 0;
+        int height = viewport != null ? viewport.height : 0;
+        return () -> {
+            LocalVisualDiff.Comparison comparison = localDiff.compare(session.appName, session.testName, name,
+                    width, height, session.config.getMatchLevel(), screenshot);
+            if (comparison.getOutcome() == LocalVisualDiff.Outcome.MISMATCH) {
+                throw new IllegalStateException(String.format("Visual mismatch in %d of %d tiles, see %s",
+                        comparison.getMismatchingTiles(), comparison.getTotalTiles(), comparison.getDiffImage()));
             }
-            runner = new VisualGridRunner(10);
-            runner.setDontCloseBatches(true);
-            threadLocalRunner.set(runner);
-        } else {
-            System.out.println("VisualGrid Runner is already initialized");
+            // Only content that matched an existing baseline may stand in for later checkpoints; a new baseline
+            // was not validated against anything
+            if (key != null && comparison.getOutcome() == LocalVisualDiff.Outcome.MATCH) {
+                cache.record(key, session.testName + "/" + name);
+            }
+        };
+    }
+
+    private static boolean isAlreadyValidated(CheckpointCache cache, String key, TestSession session, String name) {
+        String reference = cache.lookup(key);
+        if (reference == null) {
+            return false;
         }
-        return runner;
+        TestLog.info("Skipping checkpoint '%s' of test '%s', its content was already validated by '%s'",
+                name, session.testName, reference);
+        return true;
     }
 
-    private static <E extends Enum<E>> E getEnumIgnoreCase(Class<E> enumClass, String value) {
-        for (E constant : enumClass.getEnumConstants()) {
-            if (constant.name().equalsIgnoreCase(value)) {
-                return constant;
-            }
+    /**
+     * Everything besides the page content that the result of a checkpoint depends on.
+     */
+    private static String cacheContext(TestSession session) {
+        ViewportSize viewport = session.page.viewportSize();
+        return String.valueOf(session.config.getBrowsersInfo())
+                + "|" + session.config.getMatchLevel()
+                + "|" + (viewport != null ? viewport.width + "x" + viewport.height : "no-viewport");
+    }
+
+    /**
+     * Starts the batch of the default suite, unless it is already started.
+     */
+    public static void startBatch() {
+        // Fail fast on an invalid config instead of in the middle of the run
+        EyesConfig config = EyesConfig.get();
+        TestLog.info("Loaded Applitools config from: %s", config.getSource());
+        BatchManager.start(BatchManager.DEFAULT_SUITE, BATCH_NAME);
+    }
+
+    /**
+     * Starts a new batch of the default suite with the given name, replacing the current one, e.g. for each run
+     * served by {@link RunDaemon}. The runner is kept, so it can serve several batches.
+     */
+    public static void startBatch(String batchName) {
+        EyesConfig config = EyesConfig.get();
+        TestLog.info("Loaded Applitools config from: %s", config.getSource());
+        BatchManager.startBatch(BatchManager.DEFAULT_SUITE, batchName);
+    }
+
+    /**
+     * Starts a suite with its own batch and runner. Tests whose app name equals the suite name open their Eyes in it.
+     */
+    public static void startSuite(String suiteName, String batchName) {
+        EyesConfig config = EyesConfig.get();
+        TestLog.info("Loaded Applitools config from: %s", config.getSource());
+        BatchManager.start(suiteName, batchName);
+    }
+
+    /**
+     * Collects and reports the results of the suite, then closes its runner and batch.
+     * Other suites keep running.
+     */
+    public static void closeSuite(String suiteName) {
+        BatchManager.Suite suite = BatchManager.get(suiteName);
+        if (suite != null) {
+            suite.close();
+        }
+    }
+
+    /**
+     * Overrides the match level of the tests started from now on; {@code null} restores the configured one.
+     */
+    public static void setMatchLevelOverride(MatchLevel matchLevel) {
+        matchLevelOverride = matchLevel;
+    }
+
+    /**
+     * Starts the default batch unless it is already started, then creates the runner, the check pipeline when
+     * checkpoints are compared locally, and loads the config ahead of the first test.
+     */
+    public static void warmUp() {
+        startBatch();
+        BatchManager.forApp(null).getRunner();
+        if (getLocalVisualDiff() != null) {
+            getCheckPipeline();
+        }
+    }
+
+    /**
+     * Waits for the results of the tests of the current batch and passes each one to the consumer instead of the
+     * default suite's reports, leaving the runner open for further batches.
+     */
+    public static void reportBatchResults(Consumer<TestResultContainer> consumer) {
+        BatchManager.Suite suite = BatchManager.get(BatchManager.DEFAULT_SUITE);
+        if (suite != null) {
+            suite.reportBatchResults(consumer);
+        }
+    }
+
+    /**
+     * Marks the current batch as completed, leaving the runner open for further batches.
+     */
+    public static void finishBatch() {
+        BatchManager.Suite suite = BatchManager.get(BatchManager.DEFAULT_SUITE);
+        if (suite != null) {
+            suite.finishBatch();
+        }
+    }
+
+    /**
+     * Closes the check pipeline, then collects the results of every suite still running and closes their
+     * runners and batches.
+     */
+    public static void closeRunnerAndBatch() {
+        closeCheckPipeline();
+        LocalVisualDiff localDiff = localVisualDiff;
+        if (localDiff != null) {
+            localDiff.printStats();
+        }
+        CheckpointCache cache = checkpointCache;
+        if (cache != null) {
+            cache.printStats();
+        }
+        if (FlowGraph.hasSnapshots()) {
+            FlowGraph.printStats();
         }
-        throw new IllegalArgumentException("No enum constant in " + enumClass.getSimpleName() + " for value: " + value);
-    }
-
-    private static Configuration loadConfig(String testName) {
-        Yaml yaml = new Yaml();
-        try (InputStream in = ApplitoolsUtil.class.getResourceAsStream("/eyes-config.yml")) {
-            Map<String, Object> cfg = yaml.load(in);
-            Configuration config = new Configuration();
-            config.setServerUrl(cfg.get("serverUrl").toString());
-            config.setApiKey(getApplitoolsAPIKey(cfg));
-            config.setAppName(cfg.get("appName").toString());
-            config.setBatch(batch);
-
-            Map<String, Integer> vp = (Map<String, Integer>) cfg.get("viewport");
-            config.setViewportSize(new RectangleSize(vp.get("width"), vp.get("height")));
-
-            String level = cfg.get("matchLevel").toString().toUpperCase();
-            config.setMatchLevel(MatchLevel.valueOf(level));
-
-            config.setIsDisabled(getIsDisabled(cfg));
-            addProxyDetailsInConfiguration(cfg, config);
-            addBrowsersAndDevicesInConfiguration(cfg, config);
-            printConfiguration(config, testName);
-            return config;
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to load Applitools config", e);
+        if (FailureTrace.isActive()) {
+            FailureTrace.printStats();
         }
+        BatchManager.closeAll();
+        PhaseTimings.report();
     }
 
-    private static String getApplitoolsAPIKey(Map<String, Object> cfg) {
-        String rawKey = cfg.get("apiKey").toString();
-        String resolvedKey = rawKey.replace("${APPLITOOLS_API_KEY}", System.getenv("APPLITOOLS_API_KEY"));
-        return resolvedKey;
-    }
-
-    private static boolean getIsDisabled(Map<String, Object> cfg) {
-        String rawIsDisabled = cfg.get("isDisabled").toString(); // expected: ${DISABLE_APPLITOOLS}
-        String envValueForDisableApplitools = System.getenv("DISABLE_APPLITOOLS");
-        String resolvedIsDisabled = rawIsDisabled.replace("${DISABLE_APPLITOOLS}", envValueForDisableApplitools != null ? envValueForDisableApplitools : "false");
-        boolean isDisabled = Boolean.parseBoolean(resolvedIsDisabled);
-        return isDisabled;
-    }
-
-    private static void addBrowsersAndDevicesInConfiguration(Map<String, Object> cfg, Configuration config) {
-        List<Map<String, Object>> browsers = (List<Map<String, Object>>) cfg.get("browsersInfo");
-        for (Map<String, Object> b : browsers) {
-            if (b.containsKey("deviceName")) {
-                DeviceName device = getEnumIgnoreCase(DeviceName.class, (String) b.get("deviceName"));
-                ScreenOrientation orientation = getEnumIgnoreCase(ScreenOrientation.class, (String) b.getOrDefault("screenOrientation", "portrait"));
-                config.addDeviceEmulation(device, orientation);
-            } else {
-                int w = (Integer) b.get("width");
-                int h = (Integer) b.get("height");
-                BrowserType bt = getEnumIgnoreCase(BrowserType.class, (String) b.get("browserType"));
-                config.addBrowser(w, h, bt);
+    private static CheckPipeline getCheckPipeline() {
+        CheckPipeline current = checkPipeline;
+        if (null == current) {
+            synchronized (runnerLock) {
+                current = checkPipeline;
+                if (null == current) {
+                    current = CheckPipeline.fromSystemProperties();
+                    checkPipeline = current;
+                }
             }
         }
+        return current;
     }
 
-    private static void addProxyDetailsInConfiguration(Map<String, Object> cfg, Configuration config) {
-        // Load proxy config if present
-        Map<String, String> proxyMap = (Map<String, String>) cfg.get("proxy");
-        if (proxyMap != null && proxyMap.get("url") != null && !proxyMap.get("url").isEmpty()) {
-            String rawUrl = proxyMap.get("url");
-            String rawUser = proxyMap.getOrDefault("username", null);
-            String rawPass = proxyMap.getOrDefault("password", null);
+    /**
+     * @return whether checkpoints are compared locally through the check pipeline, instead of by Applitools
+     */
+    public static boolean comparesLocally() {
+        return getLocalVisualDiff() != null;
+    }
 
-            String proxyUser = resolveEnv(rawUser);
-            String proxyPass = resolveEnv(rawPass);
+    /**
+     * @return how full the check pipeline's queue is, from 0 to 1, i.e. how far the checkpoint backlog
+     * is behind the tests; 0 if no checkpoint was compared locally yet
+     */
+    public static double getCheckBacklog() {
+        CheckPipeline current = checkPipeline;
+        return current == null ? 0 : (double) current.getQueueDepth() / current.getQueueCapacity();
+    }
 
-            ProxySettings proxy;
-            if (proxyUser != null && proxyPass != null) {
-                proxy = new ProxySettings(rawUrl, proxyUser, proxyPass);
-            } else {
-                proxy = new ProxySettings(rawUrl);
+    /**
+     * Returns the local diff engine when Applitools is disabled, unless {@code visual.local=false}.
+     */
+    private static LocalVisualDiff getLocalVisualDiff() {
+        if (!EyesConfig.get().isDisabled() || !Boolean.parseBoolean(System.getProperty("visual.local", "true"))) {
+            return null;
+        }
+        LocalVisualDiff current = localVisualDiff;
+        if (null == current) {
+            synchronized (runnerLock) {
+                current = localVisualDiff;
+                if (null == current) {
+                    current = LocalVisualDiff.fromSystemProperties();
+                    localVisualDiff = current;
+                }
             }
-            config.setProxy(proxy);
         }
+        return current;
     }
 
-    private static String resolveEnv(String value) {
-        if (value == null) return null;
-        if (value.startsWith("${") && value.endsWith("}")) {
-            String envKey = value.substring(2, value.length() - 1);
-            return System.getenv(envKey);
+    /**
+     * Returns the checkpoint cache, or {@code null} unless it was enabled with {@code checks.dedupe} and
+     * checkpoints are compared locally. With Applitools enabled, a checkpoint is only known to match once the
+     * test's results arrive, long after later checkpoints with the same content ran, so nothing may be skipped.
+     */
+    private static CheckpointCache getCheckpointCache() {
+        if (!checkpointCacheResolved) {
+            synchronized (runnerLock) {
+                if (!checkpointCacheResolved) {
+                    CheckpointCache cache = CheckpointCache.fromSystemProperties();
+                    if (cache != null && !EyesConfig.get().isDisabled()) {
+                        TestLog.info("Ignoring checks.dedupe, checkpoints are only skipped when compared locally");
+                        cache = null;
+                    }
+                    checkpointCache = cache;
+                    checkpointCacheResolved = true;
+                }
+            }
         }
-        return value;
+        return checkpointCache;
+    }
+
+    private static void closeCheckPipeline() {
+        CheckPipeline current;
+        synchronized (runnerLock) {
+            current = checkPipeline;
+            checkPipeline = null;
+        }
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private static Configuration loadConfig(BatchInfo batch, String testName) {
+        Configuration config = EyesConfig.get().newConfiguration(batch);
+        MatchLevel override = matchLevelOverride;
+        if (override != null) {
+            config.setMatchLevel(override);
+        }
+        printConfiguration(config, testName);
+        return config;
     }
 
     private static void printConfiguration(Configuration config, String testName) {
@@ -270,7 +507,7 @@ public class ApplitoolsUtil {
         addBrowserAndDevicesInfoToMessage(config, sb);
 
         sb.append("==========================================================");
-        System.out.println(sb.toString());
+        TestLog.info(sb.toString());
     }
 
     private static void addProxyInfoToMessage(Configuration config, StringBuilder sb) {
@@ -305,21 +542,4 @@ public class ApplitoolsUtil {
         }
     }
 
-    private static void closeBatch() {
-        System.out.println("Closing Batch");
-        if (null != batch) {
-            batch.setCompleted(true);
-            batch = null;
-        }
-    }
-
-    private static void closeRunner(String message) {
-        System.out.println(message);
-        VisualGridRunner runner = threadLocalRunner.get();
-        if (runner != null) {
-            runner.close();
-            threadLocalRunner.remove();
-        }
-    }
-
 }
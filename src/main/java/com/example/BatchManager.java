@@ -0,0 +1,324 @@
+package com.example;
+
+import com.applitools.eyes.BatchInfo;
+import com.applitools.eyes.TestResultContainer;
+import com.applitools.eyes.TestResults;
+import com.applitools.eyes.playwright.visualgrid.VisualGridRunner;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+/**
+ * Batches of the suites running in this JVM, keyed by suite name, so several apps' suites can run concurrently.
+ * <p>
+ * Each {@link Suite} owns its Applitools batch, its Visual Grid runner and the results collected from it.
+ * The results are taken from the runner, one per test and browser or device of the configured matrix, and
+ * written to the suite's {@link ResultAggregator} when the suite closes, unless they were reported per batch. The suite
+ * remembers how many of the runner's results it has reported, so each report only looks at the new ones.
+ * The lifecycle of a suite (start, replace and finish its batch, close) is thread-safe. A test opens its Eyes
+ * in the suite named like its app; tests of apps without a suite of their own use the {@link #DEFAULT_SUITE},
+ * which has to be started too.
+ * Browsers and the check pipeline stay shared by all suites.
+ */
+public final class BatchManager {
+
+    public static final String DEFAULT_SUITE = "default";
+
+    private static final int DEFAULT_TEST_CONCURRENCY = 10;
+    private static final ConcurrentMap<String, Suite> suites = new ConcurrentHashMap<>();
+
+    private BatchManager() {
+    }
+
+    /**
+     * The batch and runner of one suite.
+     */
+    public static final class Suite {
+
+        private final String name;
+        // Tests whose Eyes failed to close, so the runner may have no results for them
+        private final List<TestResultContainer> closeFailures = new ArrayList<>();
+        private volatile BatchInfo batch;
+        private volatile VisualGridRunner runner;
+        private String lastBatchName;
+        private ResultAggregator aggregator;
+        // Number of the runner's results already reported; the runner keeps every result in the order it produced them
+        private int reportedResults;
+        private boolean closed;
+
+        private Suite(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the suite's current batch, or {@code null} if none was started or the last one was finished
+         */
+        public BatchInfo getBatch() {
+            return batch;
+        }
+
+        /**
+         * Starts a new batch with the given name, replacing the current one. The runner is kept, so it can
+         * serve several batches, e.g. one per run served by {@link RunDaemon}. The new batch gets its own ID,
+         * also in the default suite.
+         */
+        public synchronized void startBatch(String batchName) {
+            startBatch(batchName, null);
+        }
+
+        private synchronized void startBatch(String batchName, String batchId) {
+            checkOpen();
+            BatchInfo next = new BatchInfo(batchName);
+            next.setNotifyOnCompletion(false);
+            if (batchId != null && !batchId.isBlank()) {
+                TestLog.info("Joining batch with ID: %s", batchId);
+                next.setId(batchId);
+            }
+            TestLog.info("Starting Batch '%s' for suite '%s' ...", batchName, name);
+            batch = next;
+            lastBatchName = batchName;
+        }
+
+        /**
+         * Marks the current batch as completed, leaving the runner open for further batches.
+         */
+        public synchronized void finishBatch() {
+            BatchInfo current = batch;
+            if (current != null) {
+                TestLog.info("Closing Batch '%s' of suite '%s'", current.getName(), name);
+                current.setCompleted(true);
+                batch = null;
+            }
+        }
+
+        /**
+         * Returns the suite's runner, creating it on first use. Its render concurrency is read from the
+         * {@code applitools.testConcurrency} system property or the {@code APPLITOOLS_TEST_CONCURRENCY}
+         * environment variable.
+         */
+        public VisualGridRunner getRunner() {
+            VisualGridRunner current = runner;
+            if (current == null) {
+                synchronized (this) {
+                    checkOpen();
+                    current = runner;
+                    if (current == null) {
+                        int testConcurrency = getTestConcurrency();
+                        TestLog.info("Initializing Visual Grid Runner for suite '%s' with test concurrency: %d", name, testConcurrency);
+                        current = new VisualGridRunner(testConcurrency);
+                        current.setDontCloseBatches(true);
+                        runner = current;
+                    }
+                }
+            }
+            return current;
+        }
+
+        /**
+         * Records that the test's Eyes failed to close, so the failure is reported with the batch's results.
+         */
+        public synchronized void reportCloseFailure(Throwable error) {
+            closeFailures.add(new TestResultContainer(null, null, error));
+        }
+
+        /**
+         * Returns the suite's reports, opening them on the first result. Every suite writes its own reports,
+         * so concurrent suites do not overwrite each other's.
+         */
+        private synchronized ResultAggregator aggregator() {
+            if (aggregator == null) {
+                String fileName = System.getProperty("results.name", "applitools-results");
+                if (!DEFAULT_SUITE.equals(name)) {
+                    fileName += "-" + name.replaceAll("[^A-Za-z0-9._-]+", "_");
+                }
+                TestLog.info("\n=== Applitools Test Results (%s) ===", name);
+                aggregator = new ResultAggregator(Paths.get(System.getProperty("results.dir", "target/applitools-results")),
+                        fileName, lastBatchName != null ? lastBatchName : name);
+            }
+            return aggregator;
+        }
+
+        /**
+         * Waits for the results of the tests of the current batch and passes each one to the consumer instead of the
+         * suite's reports, e.g. to the reports of one run served by {@link RunDaemon}, leaving the runner open for
+         * further batches. Results passed to the consumer are not reported again when the suite closes.
+         */
+        public void reportBatchResults(Consumer<TestResultContainer> consumer) {
+            BatchInfo currentBatch = batch;
+            if (currentBatch == null) {
+                return;
+            }
+            for (TestResultContainer container : takeResults(currentBatch)) {
+                consumer.accept(container);
+            }
+        }
+
+        /**
+         * Waits for the runner to finish every test opened so far and returns the results not reported yet, one
+         * per test and browser or device, plus the tests whose Eyes failed to close.
+         *
+         * @param of the batch to return the results of, or {@code null} for every batch
+         */
+        private List<TestResultContainer> takeResults(BatchInfo of) {
+            VisualGridRunner current = runner;
+            TestResultContainer[] all = new TestResultContainer[0];
+            if (current != null) {
+                long start = System.nanoTime();
+                all = current.getAllTestResults(false).getAllResults();
+                PhaseTimings.record(PhaseTimings.RUNNER_RESULTS, start);
+            }
+            synchronized (this) {
+                List<TestResultContainer> taken = new ArrayList<>(closeFailures);
+                closeFailures.clear();
+                for (int i = reportedResults; i < all.length; i++) {
+                    TestResults result = all[i].getTestResults();
+                    // Results of earlier batches were reported with their batch
+                    if (of == null || result == null || of.getId().equals(result.getBatchId())) {
+                        taken.add(all[i]);
+                    }
+                }
+                reportedResults = Math.max(reportedResults, all.length);
+                return taken;
+            }
+        }
+
+        /**
+         * Waits for the results of the tests still rendering, finishes the result reports, closes the runner
+         * and finishes the batch. The suite cannot be used afterwards.
+         */
+        public void close() {
+            VisualGridRunner current;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                current = runner;
+                runner = null;
+            }
+            try {
+                if (current == null) {
+                    TestLog.info("Visual Grid runner of suite '%s' was never initialized, nothing to close", name);
+                    return;
+                }
+                long start = System.nanoTime();
+                try {
+                    TestLog.info("Waiting for the results of the remaining tests of suite '%s'", name);
+                    List<TestResultContainer> remaining = takeResults(null);
+                    for (TestResultContainer container : remaining) {
+                        aggregator().accept(container);
+                    }
+                    ResultAggregator reports = openedAggregator();
+                    if (reports != null) {
+                        TestLog.info("\n=== Applitools Test Results Summary (%s) ===", name);
+                        reports.close();
+                    }
+                } finally {
+                    TestLog.info("Closing Visual Grid runner of suite '%s'", name);
+                    current.close();
+                    PhaseTimings.record(PhaseTimings.RUNNER_CLOSE, start);
+                }
+            } finally {
+                finishBatch();
+                suites.remove(name, this);
+            }
+        }
+
+        private synchronized ResultAggregator openedAggregator() {
+            return aggregator;
+        }
+
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("Suite '" + name + "' is already closed");
+            }
+        }
+    }
+
+    /**
+     * Returns the suite with the given name, starting it with a batch of the given name if it does not exist yet.
+     * Processes that share the {@code applitools.batchId} system property (or {@code APPLITOOLS_BATCH_ID}
+     * environment variable) report the default suite into the same batch, e.g. shard workers.
+     */
+    public static Suite start(String suiteName, String batchName) {
+        return suites.computeIfAbsent(suiteName, key -> {
+            Suite suite = new Suite(key);
+            String batchId = DEFAULT_SUITE.equals(key)
+                    ? System.getProperty("applitools.batchId", System.getenv("APPLITOOLS_BATCH_ID"))
+                    : null;
+            suite.startBatch(batchName, batchId);
+            return suite;
+        });
+    }
+
+    /**
+     * Starts a new batch of the given name in the suite, replacing its current one, or starts the suite with that
+     * batch if it does not exist yet, see {@link #start} and {@link Suite#startBatch}.
+     */
+    public static Suite startBatch(String suiteName, String batchName) {
+        Suite suite = suites.get(suiteName);
+        if (suite == null) {
+            return start(suiteName, batchName);
+        }
+        suite.startBatch(batchName);
+        return suite;
+    }
+
+    /**
+     * Returns the suite named like the app, or the default suite if the app has no suite of its own.
+     *
+     * @throws IllegalStateException if the app has no suite and the default suite is not started, or the suite's
+     *                               batch was already finished, e.g. because the suite was closed
+     */
+    public static Suite forApp(String appName) {
+        Suite suite = appName != null ? suites.get(appName) : null;
+        if (suite == null) {
+            suite = suites.get(DEFAULT_SUITE);
+        }
+        if (suite == null || suite.getBatch() == null) {
+            throw new IllegalStateException("No batch is started for app '" + appName
+                    + "': start a suite named like the app or the default batch first");
+        }
+        return suite;
+    }
+
+    /**
+     * @return the suite with the given name, or {@code null} if it is not running
+     */
+    public static Suite get(String suiteName) {
+        return suites.get(suiteName);
+    }
+
+    /**
+     * Closes every suite that is still running, see {@link Suite#close()}.
+     */
+    public static void closeAll() {
+        for (Suite suite : new ArrayList<>(suites.values())) {
+            suite.close();
+        }
+    }
+
+    private static int getTestConcurrency() {
+        String value = System.getProperty("applitools.testConcurrency", System.getenv("APPLITOOLS_TEST_CONCURRENCY"));
+        if (value == null || value.isBlank()) {
+            return DEFAULT_TEST_CONCURRENCY;
+        }
+        try {
+            int testConcurrency = Integer.parseInt(value.trim());
+            if (testConcurrency < 1) {
+                throw new IllegalArgumentException("Applitools test concurrency must be at least 1, but was: " + value);
+            }
+            return testConcurrency;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid Applitools test concurrency: " + value, e);
+        }
+    }
+}
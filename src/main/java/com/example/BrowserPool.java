@@ -0,0 +1,313 @@
+package com.example;
+
+import com.microsoft.playwright.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a fixed number of warm Chromium instances and hands out a fresh, isolated
+ * {@link BrowserContext} / {@link Page} per test.
+ * <p>
+ * Each pooled browser lives in a {@link Slot} that owns its own {@link Playwright} instance.
+ * A slot is leased to exactly one thread at a time, which satisfies Playwright's rule that
+ * the objects created by a {@link Playwright} instance must never be used concurrently.
+ * Browsers are launched lazily, health-checked on every lease and recycled after they have
+ * served {@code maxContextsPerBrowser} contexts. If a {@link NetworkArchive} is given, every new
+ * context records or replays its traffic through it.
+ */
+public class BrowserPool implements AutoCloseable {
+
+    private final int size;
+    private final int maxContextsPerBrowser;
+    private final boolean headless;
+    private final BlockingQueue<Slot> idleSlots;
+    private final NetworkArchive networkArchive;
+    private final Supplier<Browser> launcher;
+
+    private final AtomicLong leases = new AtomicLong();
+    private final AtomicLong browserLaunches = new AtomicLong();
+    private final AtomicLong browserRecycles = new AtomicLong();
+    private final AtomicLong unhealthyBrowsers = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong totalLeaseNanos = new AtomicLong();
+    private final AtomicLong maxLeaseNanos = new AtomicLong();
+
+    private volatile boolean closed;
+
+    public BrowserPool(int size, int maxContextsPerBrowser, boolean headless) {
+        this(size, maxContextsPerBrowser, headless, null);
+    }
+
+    public BrowserPool(int size, int maxContextsPerBrowser, boolean headless, NetworkArchive networkArchive) {
+        this(size, maxContextsPerBrowser, headless, networkArchive, null);
+    }
+
+    /**
+     * @param launcher launches the pooled browsers instead of Playwright's Chromium, e.g. to measure
+     *                 the harness with stubbed browsers; {@code null} to launch Chromium
+     */
+    BrowserPool(int size, int maxContextsPerBrowser, boolean headless, NetworkArchive networkArchive, Supplier<Browser> launcher) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Browser pool size must be at least 1, but was: " + size);
+        }
+        if (maxContextsPerBrowser < 1) {
+            throw new IllegalArgumentException("Max contexts per browser must be at least 1, but was: " + maxContextsPerBrowser);
+        }
+        this.size = size;
+        this.maxContextsPerBrowser = maxContextsPerBrowser;
+        this.headless = headless;
+        this.networkArchive = networkArchive;
+        this.launcher = launcher;
+        this.idleSlots = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            idleSlots.add(new Slot(i));
+        }
+    }
+
+    /**
+     * Creates a pool sized from the {@code browserPool.size} and {@code browserPool.maxContextsPerBrowser}
+     * system properties, falling back to the given defaults. Network traffic is recorded or replayed
+     * as configured by {@link NetworkArchive#fromSystemProperties()}.
+     */
+    public static BrowserPool fromSystemProperties(int defaultSize) {
+        int size = Integer.getInteger("browserPool.size", defaultSize);
+        int maxContexts = Integer.getInteger("browserPool.maxContextsPerBrowser", 50);
+        boolean headless = Boolean.parseBoolean(System.getProperty("browserPool.headless", "false"));
+        TestLog.info("Creating browser pool: size=%d, maxContextsPerBrowser=%d, headless=%s", size, maxContexts, headless);
+        return new BrowserPool(size, maxContexts, headless, NetworkArchive.fromSystemProperties());
+    }
+
+    /**
+     * Blocks until a browser is free, then opens a new context and page on it.
+     * The returned lease must be closed when the test is done so the browser can be reused.
+     *
+     * @param flowName name of the test flow using the context, e.g. to name its recorded traffic
+     */
+    public Lease lease(String flowName) {
+        if (closed) {
+            throw new IllegalStateException("Browser pool is closed");
+        }
+        long waitStart = System.nanoTime();
+        Slot slot;
+        try {
+            slot = idleSlots.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a browser", e);
+        }
+        long waited = System.nanoTime() - waitStart;
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+        try {
+            Browser browser = slot.healthyBrowser();
+            BrowserContext context = browser.newContext();
+            if (networkArchive != null) {
+                networkArchive.attach(context, flowName);
+            }
+            Page page = context.newPage();
+            slot.contextsServed++;
+            leases.incrementAndGet();
+            PhaseTimings.record(PhaseTimings.BROWSER_LEASE, waitStart);
+            return new Lease(slot, context, page);
+        } catch (RuntimeException e) {
+            // Do not keep a browser around that could not even open a context
+            slot.discard();
+            returnSlot(slot);
+            throw e;
+        }
+    }
+
+    /**
+     * Launches every browser of the pool ahead of the first test.
+     */
+    public void warmUp() {
+        List<Lease> warmLeases = new ArrayList<>();
+        try {
+            for (int i = 0; i < size; i++) {
+                warmLeases.add(lease("warm-up"));
+            }
+        } finally {
+            for (Lease lease : warmLeases) {
+                lease.close();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        // Only idle slots are shut down here; slots still leased are shut down when they are released
+        List<Slot> idle = new ArrayList<>();
+        idleSlots.drainTo(idle);
+        for (Slot slot : idle) {
+            slot.shutdown();
+        }
+        printStats();
+        if (networkArchive != null) {
+            networkArchive.printStats();
+        }
+    }
+
+    public void printStats() {
+        long leaseCount = leases.get();
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n=== Browser Pool Stats ===\n");
+        sb.append("\tPool Size         : ").append(size).append("\n");
+        sb.append("\tLeases            : ").append(leaseCount).append("\n");
+        sb.append("\tBrowser Launches  : ").append(browserLaunches.get()).append("\n");
+        sb.append("\tBrowser Recycles  : ").append(browserRecycles.get()).append("\n");
+        sb.append("\tUnhealthy Browsers: ").append(unhealthyBrowsers.get()).append("\n");
+        sb.append("\tAvg Wait          : ").append(averageMillis(totalWaitNanos.get(), leaseCount)).append(" ms\n");
+        sb.append("\tMax Wait          : ").append(TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get())).append(" ms\n");
+        sb.append("\tAvg Lease         : ").append(averageMillis(totalLeaseNanos.get(), leaseCount)).append(" ms\n");
+        sb.append("\tMax Lease         : ").append(TimeUnit.NANOSECONDS.toMillis(maxLeaseNanos.get())).append(" ms\n");
+        sb.append("==========================================================");
+        TestLog.info(sb.toString());
+    }
+
+    private static long averageMillis(long totalNanos, long count) {
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos / count);
+    }
+
+    private void release(Slot slot, long leaseNanos) {
+        totalLeaseNanos.addAndGet(leaseNanos);
+        maxLeaseNanos.accumulateAndGet(leaseNanos, Math::max);
+        if (slot.contextsServed >= maxContextsPerBrowser) {
+            browserRecycles.incrementAndGet();
+            slot.discard();
+        }
+        returnSlot(slot);
+    }
+
+    private void returnSlot(Slot slot) {
+        if (closed) {
+            slot.shutdown();
+            return;
+        }
+        idleSlots.add(slot);
+        // close() may have drained the queue before the slot was added; whoever removes the slot shuts it down
+        if (closed && idleSlots.remove(slot)) {
+            slot.shutdown();
+        }
+    }
+
+    /**
+     * An isolated context and page on a pooled browser. Closing the lease closes the context
+     * and returns the browser to the pool.
+     */
+    public class Lease implements AutoCloseable {
+
+        private final Slot slot;
+        private final BrowserContext context;
+        private final Page page;
+        private final long leasedAt = System.nanoTime();
+        private boolean released;
+        private boolean discardBrowser;
+
+        private Lease(Slot slot, BrowserContext context, Page page) {
+            this.slot = slot;
+            this.context = context;
+            this.page = page;
+        }
+
+        public BrowserContext context() {
+            return context;
+        }
+
+        public Page page() {
+            return page;
+        }
+
+        /**
+         * Closes the browser instead of returning it to the pool when this lease is closed,
+         * e.g. because the test using it was cancelled and the browser may be in an unknown state.
+         */
+        public void discardBrowser() {
+            discardBrowser = true;
+        }
+
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            try {
+                context.close();
+            } catch (PlaywrightException e) {
+                TestLog.error("Failed to close browser context, discarding browser: %s", e.getMessage());
+                slot.discard();
+            }
+            if (discardBrowser) {
+                slot.discard();
+            }
+            release(slot, System.nanoTime() - leasedAt);
+        }
+    }
+
+    private class Slot {
+
+        private final int id;
+        private Playwright playwright;
+        private Browser browser;
+        private int contextsServed;
+
+        private Slot(int id) {
+            this.id = id;
+        }
+
+        private Browser healthyBrowser() {
+            if (browser != null && !browser.isConnected()) {
+                TestLog.error("Browser in pool slot %d is disconnected, relaunching", id);
+                unhealthyBrowsers.incrementAndGet();
+                discard();
+            }
+            if (browser == null) {
+                long launchStart = System.nanoTime();
+                if (launcher != null) {
+                    browser = launcher.get();
+                } else {
+                    if (playwright == null) {
+                        playwright = Playwright.create();
+                    }
+                    browser = playwright.chromium().launch(new BrowserType.LaunchOptions().setHeadless(headless));
+                }
+                PhaseTimings.record(PhaseTimings.BROWSER_LAUNCH, launchStart);
+                contextsServed = 0;
+                browserLaunches.incrementAndGet();
+            }
+            return browser;
+        }
+
+        private void discard() {
+            if (browser != null) {
+                try {
+                    browser.close();
+                } catch (PlaywrightException e) {
+                    TestLog.error("Failed to close browser in pool slot %d: %s", id, e.getMessage());
+                }
+                browser = null;
+            }
+        }
+
+        private void shutdown() {
+            discard();
+            if (playwright != null) {
+                try {
+                    playwright.close();
+                } catch (PlaywrightException e) {
+                    TestLog.error("Failed to close Playwright in pool slot %d: %s", id, e.getMessage());
+                }
+                playwright = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Two-stage pipeline for visual checkpoints compared by {@link LocalVisualDiff}. Eyes checkpoints do not use it,
+ * because the SDK captures and submits a checkpoint in one call on the test thread.
+ * <p>
+ * The capture stage runs on the test thread, because it needs the page. Its output is handed to a
+ * bounded queue and the submit stage runs on background workers, which drain the queue in batches,
+ * so the test can keep driving the browser while earlier checkpoints are still being processed.
+ * When the queue is full, the test thread blocks until there is room again (backpressure).
+ * <p>
+ * Failures of either stage do not stop the test; they are collected per test in a {@link Tracker}
+ * and reported by {@link #awaitCompletion(Tracker, long)} when the test closes its Eyes.
+ */
+public class CheckPipeline implements AutoCloseable {
+
+    /**
+     * Captures the state of the page on the test thread and returns the work left to do in the background,
+     * or {@code null} if there is nothing left to do.
+     */
+    @FunctionalInterface
+    public interface Capture {
+        Submission capture() throws Exception;
+    }
+
+    /**
+     * Background part of a checkpoint, e.g. uploading or comparing a captured snapshot.
+     */
+    @FunctionalInterface
+    public interface Submission {
+        void submit() throws Exception;
+    }
+
+    /**
+     * Outstanding checkpoints and failures of one test.
+     */
+    public static final class Tracker {
+
+        private final String testName;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition drained = lock.newCondition();
+        private final List<String> failures = new ArrayList<>();
+        private int outstanding;
+
+        private Tracker(String testName) {
+            this.testName = testName;
+        }
+
+        public String getTestName() {
+            return testName;
+        }
+
+        private void started() {
+            lock.lock();
+            try {
+                outstanding++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void finished(String checkName, Throwable failure) {
+            lock.lock();
+            try {
+                if (failure != null) {
+                    failures.add(checkName + ": " + failure);
+                }
+                outstanding--;
+                if (outstanding == 0) {
+                    drained.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final class PendingCheck {
+
+        private final Tracker tracker;
+        private final String checkName;
+        private final Submission submission;
+        private final long enqueuedAt = System.nanoTime();
+
+        private PendingCheck(Tracker tracker, String checkName, Submission submission) {
+            this.tracker = tracker;
+            this.checkName = checkName;
+            this.submission = submission;
+        }
+    }
+
+    private final BlockingQueue<PendingCheck> queue;
+    private final int batchSize;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean closed;
+
+    private final AtomicLong captured = new AtomicLong();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final AtomicLong totalCaptureNanos = new AtomicLong();
+    private final AtomicLong totalBackpressureNanos = new AtomicLong();
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+    private final AtomicLong totalSubmitNanos = new AtomicLong();
+
+    public CheckPipeline(int capacity, int workerCount, int batchSize) {
+        if (capacity < 1 || workerCount < 1 || batchSize < 1) {
+            throw new IllegalArgumentException(String.format(
+                    "Check pipeline capacity, workers and batch size must be at least 1, but were: %d, %d, %d",
+                    capacity, workerCount, batchSize));
+        }
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::drain, "check-pipeline-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Creates a pipeline sized from the {@code checks.queueCapacity}, {@code checks.workers} and
+     * {@code checks.batchSize} system properties.
+     */
+    public static CheckPipeline fromSystemProperties() {
+        int capacity = Integer.getInteger("checks.queueCapacity", 64);
+        int workerCount = Integer.getInteger("checks.workers", 2);
+        int batchSize = Integer.getInteger("checks.batchSize", 8);
+        TestLog.info("Creating check pipeline: queueCapacity=%d, workers=%d, batchSize=%d", capacity, workerCount, batchSize);
+        return new CheckPipeline(capacity, workerCount, batchSize);
+    }
+
+    public Tracker newTracker(String testName) {
+        return new Tracker(testName);
+    }
+
+    /**
+     * Runs the capture stage on the calling thread and queues its submission, blocking while the queue is full.
+     */
+    public void check(Tracker tracker, String checkName, Capture capture) {
+        if (closed) {
+            throw new IllegalStateException("Check pipeline is closed");
+        }
+        tracker.started();
+        Submission submission;
+        long captureStart = System.nanoTime();
+        try {
+            submission = capture.capture();
+        } catch (Exception e) {
+            tracker.finished(checkName, e);
+            failed.incrementAndGet();
+            TestLog.error("Checkpoint '%s' of test '%s' failed to capture: %s", checkName, tracker.testName, e);
+            return;
+        } finally {
+            totalCaptureNanos.addAndGet(System.nanoTime() - captureStart);
+            captured.incrementAndGet();
+        }
+        if (submission == null) {
+            tracker.finished(checkName, null);
+            return;
+        }
+
+        long putStart = System.nanoTime();
+        try {
+            queue.put(new PendingCheck(tracker, checkName, submission));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            tracker.finished(checkName, e);
+            return;
+        }
+        totalBackpressureNanos.addAndGet(System.nanoTime() - putStart);
+        enqueued.incrementAndGet();
+        maxDepth.accumulateAndGet(queue.size(), Math::max);
+    }
+
+    /**
+     * Waits until every checkpoint of the test has been submitted.
+     *
+     * @throws IllegalStateException listing the failed checkpoints, if any failed or did not finish in time
+     */
+    public void awaitCompletion(Tracker tracker, long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        tracker.lock.lock();
+        try {
+            while (tracker.outstanding > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    tracker.failures.add(tracker.outstanding + " checkpoint(s) still pending after " + timeoutMillis + " ms");
+                    break;
+                }
+                tracker.drained.awaitNanos(remaining);
+            }
+            if (!tracker.failures.isEmpty()) {
+                throw new IllegalStateException(String.format("%d checkpoint(s) of test '%s' failed:%n\t%s",
+                        tracker.failures.size(), tracker.testName, String.join("\n\t", tracker.failures)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the checkpoints of test: " + tracker.testName, e);
+        } finally {
+            tracker.lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the checkpoints that are queued but not submitted yet, failing each of them with the reason,
+     * e.g. because the run is being stopped early.
+     *
+     * @return the number of checkpoints dropped
+     */
+    public int cancelPending(String reason) {
+        List<PendingCheck> dropped = new ArrayList<>();
+        queue.drainTo(dropped);
+        for (PendingCheck check : dropped) {
+            cancelled.incrementAndGet();
+            check.tracker.finished(check.checkName, new CancellationException(reason));
+        }
+        return dropped.size();
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getQueueCapacity() {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    /**
+     * Stops accepting checkpoints and waits for the workers to submit the ones already queued.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            try {
+                worker.join(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        printStats();
+    }
+
+    public void printStats() {
+        long captureCount = captured.get();
+        long submitCount = submitted.get();
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n=== Check Pipeline Stats ===\n");
+        sb.append("\tCaptured          : ").append(captureCount).append("\n");
+        sb.append("\tSubmitted         : ").append(submitCount).append(" in ").append(batches.get()).append(" batch(es)\n");
+        sb.append("\tFailed            : ").append(failed.get()).append("\n");
+        sb.append("\tCancelled         : ").append(cancelled.get()).append("\n");
+        sb.append("\tMax Queue Depth   : ").append(maxDepth.get()).append("\n");
+        sb.append("\tAvg Capture       : ").append(averageMillis(totalCaptureNanos.get(), captureCount)).append(" ms\n");
+        sb.append("\tAvg Backpressure  : ").append(averageMillis(totalBackpressureNanos.get(), enqueued.get())).append(" ms\n");
+        sb.append("\tAvg Queue Latency : ").append(averageMillis(totalQueueNanos.get(), submitCount)).append(" ms\n");
+        sb.append("\tMax Queue Latency : ").append(TimeUnit.NANOSECONDS.toMillis(maxQueueNanos.get())).append(" ms\n");
+        sb.append("\tAvg Submit        : ").append(averageMillis(totalSubmitNanos.get(), submitCount)).append(" ms\n");
+        sb.append("==========================================================");
+        TestLog.info(sb.toString());
+    }
+
+    private static long averageMillis(long totalNanos, long count) {
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos / count);
+    }
+
+    private void drain() {
+        List<PendingCheck> batch = new ArrayList<>(batchSize);
+        while (true) {
+            PendingCheck first;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (first == null) {
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+            batch.add(first);
+            queue.drainTo(batch, batchSize - 1);
+            batches.incrementAndGet();
+            for (PendingCheck check : batch) {
+                submit(check);
+            }
+            batch.clear();
+        }
+    }
+
+    private void submit(PendingCheck check) {
+        long start = System.nanoTime();
+        long queued = start - check.enqueuedAt;
+        totalQueueNanos.addAndGet(queued);
+        maxQueueNanos.accumulateAndGet(queued, Math::max);
+        Throwable failure = null;
+        try {
+            check.submission.submit();
+        } catch (Exception e) {
+            failure = e;
+            failed.incrementAndGet();
+            TestLog.error("Checkpoint '%s' of test '%s' failed: %s", check.checkName, check.tracker.testName, e);
+        } finally {
+            totalSubmitNanos.addAndGet(System.nanoTime() - start);
+            submitted.incrementAndGet();
+            check.tracker.finished(check.checkName, failure);
+        }
+    }
+}
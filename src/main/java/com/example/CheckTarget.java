@@ -0,0 +1,76 @@
+package com.example;
+
+import com.applitools.eyes.fluent.ICheckSettings;
+import com.applitools.eyes.playwright.fluent.Target;
+import com.microsoft.playwright.Page;
+
+/**
+ * What a checkpoint captures, independent of the engine that validates it: Applitools Eyes,
+ * or {@link LocalVisualDiff} when Applitools is disabled.
+ */
+public final class CheckTarget {
+
+    /**
+     * Serializes an element, copying the live state of form controls into attributes, since
+     * e.g. checking a checkbox does not change its HTML.
+     */
+    private static final String SERIALIZE_WITH_FORM_STATE = "element => {"
+            + " const clone = element.cloneNode(true);"
+            + " const live = element.querySelectorAll('input, select, textarea');"
+            + " const copies = clone.querySelectorAll('input, select, textarea');"
+            + " live.forEach((control, i) => {"
+            + "   if (control.checked) copies[i].setAttribute('checked', ''); else copies[i].removeAttribute('checked');"
+            + "   copies[i].setAttribute('value', control.value);"
+            + " });"
+            + " return clone.outerHTML; }";
+
+    private final String selector;
+
+    private CheckTarget(String selector) {
+        this.selector = selector;
+    }
+
+    /**
+     * The full page.
+     */
+    public static CheckTarget window() {
+        return new CheckTarget(null);
+    }
+
+    /**
+     * The element matched by the given Playwright selector.
+     */
+    public static CheckTarget region(String selector) {
+        return new CheckTarget(selector);
+    }
+
+    public ICheckSettings toEyesSettings() {
+        return selector == null ? Target.window().fully() : Target.region(selector);
+    }
+
+    /**
+     * Takes a PNG screenshot of this target. Must be called on the thread that drives the page.
+     */
+    public byte[] screenshot(Page page) {
+        if (selector == null) {
+            return page.screenshot(new Page.ScreenshotOptions().setFullPage(true));
+        }
+        return page.locator(selector).first().screenshot();
+    }
+
+    /**
+     * Returns the HTML of this target, including the state of its form controls.
+     * Must be called on the thread that drives the page.
+     */
+    public String html(Page page) {
+        if (selector == null) {
+            return String.valueOf(page.evaluate("(" + SERIALIZE_WITH_FORM_STATE + ")(document.documentElement)"));
+        }
+        return String.valueOf(page.locator(selector).first().evaluate(SERIALIZE_WITH_FORM_STATE));
+    }
+
+    @Override
+    public String toString() {
+        return selector == null ? "window" : "region(" + selector + ")";
+    }
+}
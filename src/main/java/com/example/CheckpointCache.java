@@ -0,0 +1,144 @@
+package com.example;
+
+import com.microsoft.playwright.Page;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed cache of the checkpoints validated in this batch.
+ * <p>
+ * Each checkpoint is keyed by a SHA-256 hash of the page state it captures - a normalized DOM snapshot
+ * or the screenshot - together with the browser matrix, match level and viewport it is validated with.
+ * A checkpoint whose key was already recorded as matching is not compared again; it is reported as a
+ * reference to the first checkpoint with the same content instead. Only used for local visual diffs,
+ * where a checkpoint's match is known before later checkpoints look it up.
+ */
+public class CheckpointCache {
+
+    /**
+     * What the content hash of a checkpoint is computed from.
+     */
+    public enum Source {
+        DOM, SCREENSHOT
+    }
+
+    private final Source source;
+    private final ConcurrentMap<String, String> validated = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong totalHashNanos = new AtomicLong();
+
+    public CheckpointCache(Source source) {
+        this.source = source;
+    }
+
+    /**
+     * Creates a cache if the {@code checks.dedupe} system property is {@code dom} or {@code screenshot},
+     * or returns {@code null} if it is {@code off} (the default).
+     */
+    public static CheckpointCache fromSystemProperties() {
+        String value = System.getProperty("checks.dedupe", "off").trim();
+        if (value.equalsIgnoreCase("off") || value.equalsIgnoreCase("false")) {
+            return null;
+        }
+        Source source = EyesConfig.getEnumIgnoreCase(Source.class, value);
+        TestLog.info("Skipping checkpoints with identical content, hashed from the %s", source.name().toLowerCase());
+        return new CheckpointCache(source);
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    /**
+     * Hashes the state of the target. Must be called on the thread that drives the page.
+     *
+     * @param screenshot the screenshot already taken of the target, or {@code null} to take one if needed
+     * @param context    everything else the validation depends on, e.g. browser matrix, match level and viewport
+     */
+    public String key(Page page, CheckTarget target, byte[] screenshot, String context) {
+        long start = System.nanoTime();
+        try {
+            MessageDigest digest = sha256();
+            digest.update(context.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(target.toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            if (source == Source.SCREENSHOT) {
+                digest.update(screenshot != null ? screenshot : target.screenshot(page));
+            } else {
+                digest.update(normalize(target.html(page)).getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } finally {
+            totalHashNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Hashes the normalized DOM of the whole page. Must be called on the thread that drives the page.
+     */
+    static String contentHash(Page page) {
+        MessageDigest digest = sha256();
+        digest.update(normalize(CheckTarget.window().html(page)).getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Returns the checkpoint that already validated the same content, or {@code null} if there is none.
+     */
+    public String lookup(String key) {
+        String reference = validated.get(key);
+        if (reference != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return reference;
+    }
+
+    /**
+     * Records that the checkpoint, e.g. {@code test/step}, validated the content with the given key.
+     */
+    public void record(String key, String checkpoint) {
+        validated.putIfAbsent(key, checkpoint);
+    }
+
+    public void printStats() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n=== Checkpoint Cache Stats ===\n");
+        sb.append("\tHashed From       : ").append(source.name().toLowerCase()).append("\n");
+        sb.append("\tLookups           : ").append(lookups).append("\n");
+        sb.append("\tHits (skipped)    : ").append(hitCount).append("\n");
+        sb.append("\tMisses            : ").append(misses.get()).append("\n");
+        sb.append("\tHit Ratio         : ").append(lookups == 0 ? 0 : Math.round(hitCount * 100.0 / lookups)).append(" %\n");
+        sb.append("\tDistinct States   : ").append(validated.size()).append("\n");
+        sb.append("\tAvg Hash Time     : ").append(lookups == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalHashNanos.get() / lookups)).append(" ms\n");
+        sb.append("==========================================================");
+        TestLog.info(sb.toString());
+    }
+
+    /**
+     * Collapses whitespace, so formatting-only differences of the DOM do not change the hash.
+     */
+    private static String normalize(String html) {
+        return html.replaceAll("\\s+", " ").replace("> <", "><").trim();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
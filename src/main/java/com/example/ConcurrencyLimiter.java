@@ -0,0 +1,105 @@
+package com.example;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the number of test flows that drive a browser at the same time, independently of how many
+ * threads are running tests. With virtual threads every test gets its own thread, so this limiter,
+ * not the thread count, decides how many browsers and drivers are busy.
+ * <p>
+ * The limit can be changed while tests are running, between 1 and the maximum given at construction,
+ * e.g. by {@link AdaptiveConcurrency}. Lowering it does not interrupt running tests; it only delays
+ * the next acquisitions until enough tests have finished.
+ */
+public class ConcurrencyLimiter {
+
+    private final int maxConcurrency;
+    private final AdjustableSemaphore permits;
+    private int limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    public ConcurrencyLimiter(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Max concurrency must be at least 1, but was: " + maxConcurrency);
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.limit = maxConcurrency;
+        this.permits = new AdjustableSemaphore(maxConcurrency);
+    }
+
+    private static final class AdjustableSemaphore extends Semaphore {
+
+        private AdjustableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
+    public void acquire() throws InterruptedException {
+        long waitStart = System.nanoTime();
+        permits.acquire();
+        totalWaitNanos.addAndGet(System.nanoTime() - waitStart);
+        acquisitions.incrementAndGet();
+        peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+        permits.release();
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Sets how many tests may run at the same time, capped to between 1 and the max concurrency.
+     *
+     * @return the limit that was set
+     */
+    public synchronized int setLimit(int newLimit) {
+        int capped = Math.max(1, Math.min(maxConcurrency, newLimit));
+        int delta = capped - limit;
+        if (delta > 0) {
+            permits.release(delta);
+        } else if (delta < 0) {
+            permits.reducePermits(-delta);
+        }
+        limit = capped;
+        return capped;
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the number of tests currently waiting for a permit
+     */
+    public int getWaiting() {
+        return permits.getQueueLength();
+    }
+
+    public int getPeakInFlight() {
+        return peakInFlight.get();
+    }
+
+    public long getAverageWaitMillis() {
+        long count = acquisitions.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get() / count);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the same tests once per concurrency level and prints how throughput changes with the
+ * number of concurrent flows. Enabled with {@code -Dtests.concurrencySweep=1,2,4,8}.
+ */
+public final class ConcurrencySweep {
+
+    private ConcurrencySweep() {
+    }
+
+    public static int[] levelsFromSystemProperties() {
+        String sweep = System.getProperty("tests.concurrencySweep");
+        if (sweep == null || sweep.isBlank()) {
+            return new int[0];
+        }
+        String[] parts = sweep.split(",");
+        int[] levels = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                levels[i] = Integer.parseInt(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid concurrency level in tests.concurrencySweep: " + parts[i], e);
+            }
+        }
+        return levels;
+    }
+
+    public static void run(List<TestCase> tests, String appName, int[] levels,
+                           TestScheduler.ExecutionMode executionMode, long timeoutSeconds, RunHistory runHistory) {
+        List<String> rows = new ArrayList<>();
+        for (int level : levels) {
+            TestLog.info("Sweep: running %d test(s) with %d concurrent flow(s)", tests.size(), level);
+            long start = System.nanoTime();
+            TestScheduler scheduler;
+            List<TestRun> runs;
+            try (BrowserPool browserPool = BrowserPool.fromSystemProperties(level)) {
+                scheduler = new TestScheduler(browserPool, appName, level, timeoutSeconds, executionMode)
+                        .setRunHistory(runHistory);
+                runs = scheduler.run(tests);
+            }
+            long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            long completed = runs.stream().filter(run -> run.getStatus() == TestRun.Status.COMPLETED).count();
+            double testsPerMinute = wallMillis == 0 ? 0 : runs.size() * 60_000.0 / wallMillis;
+            rows.add(String.format("\t%11d | %5d | %9d | %10d ms | %12.2f | %8d | %11d ms",
+                    level, runs.size(), completed, wallMillis, testsPerMinute,
+                    scheduler.getLimiter().getPeakInFlight(), scheduler.getLimiter().getAverageWaitMillis()));
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n=== Concurrency Sweep (").append(executionMode).append(") ===\n");
+        sb.append("\tConcurrency | Tests | Completed |     Wall time | Tests/minute | Peak     | Avg wait\n");
+        for (String row : rows) {
+            sb.append(row).append("\n");
+        }
+        sb.append("==========================================================");
+        TestLog.info(sb.toString());
+    }
+}
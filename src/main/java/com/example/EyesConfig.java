@@ -0,0 +1,301 @@
+package com.example;
+
+import com.applitools.eyes.BatchInfo;
+import com.applitools.eyes.MatchLevel;
+import com.applitools.eyes.ProxySettings;
+import com.applitools.eyes.RectangleSize;
+import com.applitools.eyes.config.Configuration;
+import com.applitools.eyes.visualgrid.BrowserType;
+import com.applitools.eyes.visualgrid.model.DeviceName;
+import com.applitools.eyes.visualgrid.model.ScreenOrientation;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Immutable snapshot of {@code eyes-config.yml}.
+ * <p>
+ * The file is parsed, resolved against the environment and validated once. Every test then gets
+ * its own copy of a pre-built {@link Configuration} template through {@link #newConfiguration(BatchInfo)}.
+ * When {@code eyes.config.watch=true}, a {@link WatchService} reloads the file on change and swaps the
+ * current snapshot atomically; a reload that fails validation keeps the previous snapshot.
+ */
+public final class EyesConfig {
+
+    private static final String DEFAULT_RESOURCE = "/eyes-config.yml";
+    private static final AtomicReference<EyesConfig> current = new AtomicReference<>();
+    private static final Map<Class<?>, Map<String, ?>> enumLookups = new ConcurrentHashMap<>();
+    private static Thread watcher = null;
+
+    private final String source;
+    private final Configuration template;
+    private final boolean isDisabled;
+
+    private EyesConfig(String source, Configuration template, boolean isDisabled) {
+        this.source = source;
+        this.template = template;
+        this.isDisabled = isDisabled;
+    }
+
+    /**
+     * Returns the current snapshot, loading and validating it on first use.
+     *
+     * @throws IllegalStateException if the configuration is missing or invalid
+     */
+    public static EyesConfig get() {
+        EyesConfig config = current.get();
+        if (config == null) {
+            synchronized (EyesConfig.class) {
+                config = current.get();
+                if (config == null) {
+                    config = load();
+                    current.set(config);
+                    startWatchingIfEnabled();
+                }
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Returns a new {@link Configuration} for a single test. Changes made to it do not affect the snapshot.
+     */
+    public Configuration newConfiguration(BatchInfo batch) {
+        Configuration config = new Configuration(template);
+        config.setBatch(batch);
+        return config;
+    }
+
+    public boolean isDisabled() {
+        return isDisabled;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    static EyesConfig load() {
+        String configPath = System.getProperty("eyes.config");
+        if (configPath != null && !configPath.isBlank()) {
+            Path path = Paths.get(configPath);
+            try (InputStream in = Files.newInputStream(path)) {
+                return parse(in, path.toAbsolutePath().toString());
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to read Applitools config: " + path, e);
+            }
+        }
+        try (InputStream in = EyesConfig.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Applitools config not found on classpath: " + DEFAULT_RESOURCE);
+            }
+            return parse(in, "classpath:" + DEFAULT_RESOURCE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read Applitools config: " + DEFAULT_RESOURCE, e);
+        }
+    }
+
+    static EyesConfig parse(InputStream in, String source) {
+        Map<String, Object> cfg = new Yaml().load(in);
+        if (cfg == null) {
+            throw new IllegalStateException("Applitools config is empty: " + source);
+        }
+        try {
+            Configuration config = new Configuration();
+            config.setServerUrl(requireString(cfg, "serverUrl"));
+            config.setAppName(requireString(cfg, "appName"));
+
+            Map<String, Object> vp = requireMap(cfg, "viewport");
+            config.setViewportSize(new RectangleSize(requireInt(vp, "width"), requireInt(vp, "height")));
+
+            config.setMatchLevel(getEnumIgnoreCase(MatchLevel.class, requireString(cfg, "matchLevel")));
+
+            boolean isDisabled = getIsDisabled(cfg);
+            config.setIsDisabled(isDisabled);
+            String apiKey = getApplitoolsAPIKey(cfg);
+            if (!isDisabled && (apiKey == null || apiKey.isEmpty())) {
+                throw new IllegalArgumentException("apiKey is not set. Update eyes-config.yml or set APPLITOOLS_API_KEY");
+            }
+            config.setApiKey(apiKey);
+
+            addProxyDetailsInConfiguration(cfg, config);
+            addBrowsersAndDevicesInConfiguration(cfg, config);
+            return new EyesConfig(source, config, isDisabled);
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Invalid Applitools config (" + source + "): " + e.getMessage(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E extends Enum<E>> E getEnumIgnoreCase(Class<E> enumClass, String value) {
+        Map<String, E> lookup = (Map<String, E>) enumLookups.computeIfAbsent(enumClass, EyesConfig::buildEnumLookup);
+        E constant = value == null ? null : lookup.get(value.toLowerCase(Locale.ROOT));
+        if (constant == null) {
+            throw new IllegalArgumentException("No enum constant in " + enumClass.getSimpleName() + " for value: " + value);
+        }
+        return constant;
+    }
+
+    private static Map<String, ?> buildEnumLookup(Class<?> enumClass) {
+        Map<String, Object> lookup = new HashMap<>();
+        for (Object constant : enumClass.getEnumConstants()) {
+            lookup.put(((Enum<?>) constant).name().toLowerCase(Locale.ROOT), constant);
+        }
+        return Collections.unmodifiableMap(lookup);
+    }
+
+    @SuppressWarnings("unchecked")
+    static void addBrowsersAndDevicesInConfiguration(Map<String, Object> cfg, Configuration config) {
+        Object browsersInfo = cfg.get("browsersInfo");
+        if (!(browsersInfo instanceof List) || ((List<?>) browsersInfo).isEmpty()) {
+            throw new IllegalArgumentException("browsersInfo must list at least one browser or device");
+        }
+        for (Map<String, Object> b : (List<Map<String, Object>>) browsersInfo) {
+            if (b.containsKey("deviceName")) {
+                DeviceName device = getEnumIgnoreCase(DeviceName.class, (String) b.get("deviceName"));
+                ScreenOrientation orientation = getEnumIgnoreCase(ScreenOrientation.class, (String) b.getOrDefault("screenOrientation", "portrait"));
+                config.addDeviceEmulation(device, orientation);
+            } else {
+                int w = requireInt(b, "width");
+                int h = requireInt(b, "height");
+                BrowserType bt = getEnumIgnoreCase(BrowserType.class, (String) b.get("browserType"));
+                config.addBrowser(w, h, bt);
+            }
+        }
+    }
+
+    private static String getApplitoolsAPIKey(Map<String, Object> cfg) {
+        return resolveEnv(requireString(cfg, "apiKey"));
+    }
+
+    private static boolean getIsDisabled(Map<String, Object> cfg) {
+        Object rawIsDisabled = cfg.get("isDisabled"); // expected: ${DISABLE_APPLITOOLS}
+        if (rawIsDisabled == null) {
+            return false;
+        }
+        String resolvedIsDisabled = resolveEnv(rawIsDisabled.toString());
+        return Boolean.parseBoolean(resolvedIsDisabled != null ? resolvedIsDisabled : "false");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addProxyDetailsInConfiguration(Map<String, Object> cfg, Configuration config) {
+        // Load proxy config if present
+        Map<String, String> proxyMap = (Map<String, String>) cfg.get("proxy");
+        if (proxyMap != null && proxyMap.get("url") != null && !proxyMap.get("url").isEmpty()) {
+            String rawUrl = proxyMap.get("url");
+            String proxyUser = resolveEnv(proxyMap.get("username"));
+            String proxyPass = resolveEnv(proxyMap.get("password"));
+
+            ProxySettings proxy;
+            if (proxyUser != null && proxyPass != null) {
+                proxy = new ProxySettings(rawUrl, proxyUser, proxyPass);
+            } else {
+                proxy = new ProxySettings(rawUrl);
+            }
+            config.setProxy(proxy);
+        }
+    }
+
+    private static String resolveEnv(String value) {
+        if (value == null) return null;
+        if (value.startsWith("${") && value.endsWith("}")) {
+            String envKey = value.substring(2, value.length() - 1);
+            return System.getenv(envKey);
+        }
+        return value;
+    }
+
+    private static String requireString(Map<String, Object> cfg, String key) {
+        Object value = cfg.get(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing required key: " + key);
+        }
+        return value.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> requireMap(Map<String, Object> cfg, String key) {
+        Object value = cfg.get(key);
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("Missing or invalid section: " + key);
+        }
+        return (Map<String, Object>) value;
+    }
+
+    private static int requireInt(Map<String, Object> cfg, String key) {
+        Object value = cfg.get(key);
+        if (!(value instanceof Integer)) {
+            throw new IllegalArgumentException("Missing or non-numeric value for: " + key);
+        }
+        return (Integer) value;
+    }
+
+    private static void startWatchingIfEnabled() {
+        if (!Boolean.getBoolean("eyes.config.watch") || watcher != null) {
+            return;
+        }
+        Path file = resolveConfigFile();
+        if (file == null) {
+            TestLog.info("Applitools config is not a file on disk, hot reload is disabled");
+            return;
+        }
+        watcher = new Thread(() -> watch(file), "eyes-config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        TestLog.info("Watching Applitools config for changes: %s", file);
+    }
+
+    private static Path resolveConfigFile() {
+        String configPath = System.getProperty("eyes.config");
+        if (configPath != null && !configPath.isBlank()) {
+            return Paths.get(configPath).toAbsolutePath();
+        }
+        URL resource = EyesConfig.class.getResource(DEFAULT_RESOURCE);
+        if (resource == null || !"file".equals(resource.getProtocol())) {
+            return null;
+        }
+        try {
+            return Paths.get(resource.toURI());
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private static void watch(Path file) {
+        try (WatchService watchService = file.getFileSystem().newWatchService()) {
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (file.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+                if (changed) {
+                    reload(file);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            TestLog.error("Stopped watching Applitools config: %s", e.getMessage());
+        }
+    }
+
+    private static void reload(Path file) {
+        try (InputStream in = Files.newInputStream(file)) {
+            current.set(parse(in, file.toString()));
+            TestLog.info("Reloaded Applitools config from: %s", file);
+        } catch (IOException | IllegalStateException e) {
+            TestLog.error("Ignoring invalid Applitools config change, keeping the previous one: %s", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Decides when a run is broken badly enough that the tests still queued or running should be cancelled.
+ * <p>
+ * The policy trips on the first of: more than {@code maxFailures} failed or timed out tests, more than
+ * {@code maxExceptions} tests whose flow threw, or any failure of a {@link VisualTest#critical() critical} test,
+ * including a visual mismatch. A limit of 0 or less disables that rule. The policy trips at most once.
+ */
+public class FailFastPolicy {
+
+    private final int maxFailures;
+    private final int maxExceptions;
+    private final boolean stopOnCriticalFailure;
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger exceptions = new AtomicInteger();
+    private final AtomicReference<String> reason = new AtomicReference<>();
+
+    public FailFastPolicy(int maxFailures, int maxExceptions, boolean stopOnCriticalFailure) {
+        this.maxFailures = maxFailures;
+        this.maxExceptions = maxExceptions;
+        this.stopOnCriticalFailure = stopOnCriticalFailure;
+    }
+
+    /**
+     * Reads the {@code tests.maxFailures} and {@code tests.maxExceptions} system properties (default 0, disabled)
+     * and {@code tests.stopOnCriticalFailure} (default {@code true}).
+     */
+    public static FailFastPolicy fromSystemProperties() {
+        return new FailFastPolicy(
+                Integer.getInteger("tests.maxFailures", 0),
+                Integer.getInteger("tests.maxExceptions", 0),
+                Boolean.parseBoolean(System.getProperty("tests.stopOnCriticalFailure", "true")));
+    }
+
+    /**
+     * Counts a finished test.
+     *
+     * @param critical whether the test is marked {@link VisualTest#critical() critical}
+     * @param threw    whether the test's flow threw, as opposed to failing a checkpoint or timing out
+     * @return why the run should stop, if this test tripped the policy; {@code null} otherwise, also if the
+     * policy had already tripped
+     */
+    public String onFinished(TestRun run, boolean critical, boolean threw) {
+        if (run.getStatus() == TestRun.Status.COMPLETED || run.getStatus() == TestRun.Status.CANCELLED) {
+            return null;
+        }
+        String tripped = null;
+        if (critical && stopOnCriticalFailure) {
+            tripped = String.format("critical test '%s' %s", run.getName(), run.getStatus().name().toLowerCase().replace('_', ' '));
+        }
+        int failureCount = failures.incrementAndGet();
+        if (tripped == null && maxFailures > 0 && failureCount > maxFailures) {
+            tripped = String.format("%d test(s) failed or timed out, more than the %d allowed", failureCount, maxFailures);
+        }
+        int exceptionCount = threw ? exceptions.incrementAndGet() : exceptions.get();
+        if (tripped == null && threw && maxExceptions > 0 && exceptionCount > maxExceptions) {
+            tripped = String.format("%d test(s) threw an exception, more than the %d allowed", exceptionCount, maxExceptions);
+        }
+        return tripped != null && reason.compareAndSet(null, tripped) ? tripped : null;
+    }
+
+    public boolean isTripped() {
+        return reason.get() != null;
+    }
+
+    /**
+     * @return why the run was stopped, or {@code null} if the policy has not tripped
+     */
+    public String getReason() {
+        return reason.get();
+    }
+}
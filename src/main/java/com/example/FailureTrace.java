@@ -0,0 +1,213 @@
+package com.example;
+
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.PlaywrightException;
+import com.microsoft.playwright.Tracing;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Playwright tracing that is only kept for the tests that fail.
+ * <p>
+ * Each test's context records a Playwright trace with screenshots, and the test thread appends its flow steps,
+ * checkpoints and timed phases to a bounded in-memory ring buffer of events. When the test throws, times out or
+ * fails a checkpoint, the trace is saved as {@code <traces.dir>/<test>-<timestamp>.zip} next to a {@code .log} of
+ * the buffered events. Otherwise the trace is stopped without being written.
+ * <p>
+ * Visual Grid mismatches are only known once the runner returns the results, after the test's context is
+ * closed. For those, the event buffer of the test's last run is kept until {@link #flushMismatch} is called
+ * with its result.
+ */
+public final class FailureTrace {
+
+    private static final ThreadLocal<FailureTrace> current = new ThreadLocal<>();
+    private static final ConcurrentMap<String, FailureTrace> retained = new ConcurrentHashMap<>();
+    private static final AtomicLong started = new AtomicLong();
+    private static final AtomicLong saved = new AtomicLong();
+    private static final AtomicLong discarded = new AtomicLong();
+    private static final AtomicLong mismatchLogs = new AtomicLong();
+
+    private final BrowserContext context;
+    private final String testName;
+    private final Path directory;
+    private final long startNanos = System.nanoTime();
+    private final Event[] events;
+    private long eventCount;
+
+    /**
+     * One entry of the ring buffer.
+     */
+    private static final class Event {
+
+        private final long atNanos;
+        private final String kind;
+        private final String detail;
+        private final long durationNanos;
+
+        private Event(long atNanos, String kind, String detail, long durationNanos) {
+            this.atNanos = atNanos;
+            this.kind = kind;
+            this.detail = detail;
+            this.durationNanos = durationNanos;
+        }
+    }
+
+    private FailureTrace(BrowserContext context, String testName, Path directory, int bufferSize) {
+        this.context = context;
+        this.testName = testName;
+        this.directory = directory;
+        this.events = new Event[bufferSize];
+    }
+
+    /**
+     * Starts tracing the context for the test on the current thread if the {@code traces.onFailure} system
+     * property is {@code true}, or returns {@code null} if it is not. The traces are saved to {@code traces.dir}
+     * (default {@code target/traces}) and the ring buffer holds the last {@code traces.bufferSize} events
+     * (default 256).
+     */
+    public static FailureTrace start(BrowserContext context, String testName) {
+        if (!Boolean.getBoolean("traces.onFailure")) {
+            return null;
+        }
+        int bufferSize = Integer.getInteger("traces.bufferSize", 256);
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Trace buffer size must be at least 1, but was: " + bufferSize);
+        }
+        FailureTrace trace = new FailureTrace(context, testName,
+                Paths.get(System.getProperty("traces.dir", "target/traces")), bufferSize);
+        long start = System.nanoTime();
+        context.tracing().start(new Tracing.StartOptions()
+                .setName(sanitize(testName))
+                .setScreenshots(true)
+                .setSnapshots(Boolean.parseBoolean(System.getProperty("traces.snapshots", "true"))));
+        PhaseTimings.record(PhaseTimings.TRACE_START, start);
+        started.incrementAndGet();
+        current.set(trace);
+        return trace;
+    }
+
+    /**
+     * Appends an event to the ring buffer of the test running on the current thread, if it is traced.
+     *
+     * @param detail e.g. the name of the step or checkpoint, or {@code null}
+     */
+    public static void event(String kind, String detail, long durationNanos) {
+        FailureTrace trace = current.get();
+        if (trace != null) {
+            trace.events[(int) (trace.eventCount++ % trace.events.length)] = new Event(System.nanoTime(), kind, detail, durationNanos);
+        }
+    }
+
+    /**
+     * Stops tracing. The trace and the buffered events are saved if {@code failure} is not {@code null},
+     * otherwise the trace is dropped and only the events are kept for {@link #flushMismatch}.
+     * Never throws, so it can run in the cleanup of a test.
+     *
+     * @param failure why the test failed, or {@code null} if it did not
+     */
+    public void stop(String failure) {
+        current.remove();
+        long start = System.nanoTime();
+        try {
+            if (failure == null) {
+                context.tracing().stop();
+                discarded.incrementAndGet();
+                retained.put(testName, this);
+                return;
+            }
+            retained.remove(testName);
+            Files.createDirectories(directory);
+            String baseName = sanitize(testName) + "-" + System.currentTimeMillis();
+            Path zip = directory.resolve(baseName + ".zip");
+            context.tracing().stop(new Tracing.StopOptions().setPath(zip));
+            writeEvents(directory.resolve(baseName + ".log"), failure);
+            saved.incrementAndGet();
+            TestLog.info("Saved the trace of failed test '%s' to %s", testName, zip.toAbsolutePath());
+        } catch (PlaywrightException | IOException e) {
+            TestLog.error("Failed to stop the trace of test '%s': %s", testName, e.getMessage());
+        } finally {
+            PhaseTimings.record(PhaseTimings.TRACE_STOP, start);
+        }
+    }
+
+    /**
+     * Writes the buffered events of the test's last run if the result is a visual mismatch.
+     * Called for every result the runner reports; results of tests that were not traced are ignored.
+     */
+    public static void flushMismatch(String testName, int mismatches) {
+        if (mismatches == 0 || testName == null) {
+            return;
+        }
+        FailureTrace trace = retained.remove(testName);
+        if (trace == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(trace.directory);
+            Path log = trace.directory.resolve(sanitize(testName) + "-" + System.currentTimeMillis() + ".log");
+            trace.writeEvents(log, mismatches + " visual mismatch(es)");
+            mismatchLogs.incrementAndGet();
+            TestLog.info("Saved the events of mismatched test '%s' to %s", testName, log.toAbsolutePath());
+        } catch (IOException e) {
+            TestLog.error("Failed to save the events of test '%s': %s", testName, e.getMessage());
+        }
+    }
+
+    /**
+     * @return whether any test was traced in this process
+     */
+    public static boolean isActive() {
+        return started.get() > 0;
+    }
+
+    public static void printStats() {
+        LatencyHistogram startTimes = PhaseTimings.get(PhaseTimings.TRACE_START);
+        LatencyHistogram stopTimes = PhaseTimings.get(PhaseTimings.TRACE_STOP);
+        long overheadMicros = (startTimes != null ? startTimes.getTotalMicros() : 0) + (stopTimes != null ? stopTimes.getTotalMicros() : 0);
+        long traced = started.get();
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n=== Failure Trace Stats ===\n");
+        sb.append("\tTraced Tests      : ").append(traced).append("\n");
+        sb.append("\tTraces Saved      : ").append(saved.get()).append("\n");
+        sb.append("\tTraces Dropped    : ").append(discarded.get()).append("\n");
+        sb.append("\tMismatch Logs     : ").append(mismatchLogs.get()).append("\n");
+        sb.append("\tAvg Overhead      : ").append(traced == 0 ? 0 : TimeUnit.MICROSECONDS.toMillis(overheadMicros / traced)).append(" ms per test\n");
+        sb.append("==========================================================");
+        TestLog.info(sb.toString());
+    }
+
+    private void writeEvents(Path file, String failure) throws IOException {
+        List<Event> ordered = new ArrayList<>();
+        long first = Math.max(0, eventCount - events.length);
+        for (long i = first; i < eventCount; i++) {
+            ordered.add(events[(int) (i % events.length)]);
+        }
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(String.format("Test: %s%nFailure: %s%n", testName, failure));
+            if (first > 0) {
+                writer.write(String.format("(%d earlier event(s) dropped)%n", first));
+            }
+            for (Event event : ordered) {
+                writer.write(String.format(Locale.ROOT, "%+10.1f ms  %-16s %9.1f ms  %s%n",
+                        (event.atNanos - startNanos) / 1e6, event.kind, event.durationNanos / 1e6,
+                        event.detail != null ? event.detail : ""));
+            }
+        }
+    }
+
+    private static String sanitize(String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]+", "_");
+    }
+}
@@ -0,0 +1,110 @@
+package com.example;
+
+import com.microsoft.playwright.Page;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A test flow expressed as a sequence of named steps, so that {@link FlowGraph} can detect the
+ * prefixes several flows share. Two steps are the same step if they have the same name.
+ * <p>
+ * A {@link #setup(String, Consumer) setup} step only brings the page into a state and makes no checkpoints,
+ * so {@link FlowGraph} may skip it. Only prefixes made of setup steps are shared.
+ */
+public final class Flow {
+
+    private static final ThreadLocal<String> currentSetupStep = new ThreadLocal<>();
+
+    /**
+     * One named step of a flow.
+     */
+    public static final class Step {
+
+        private final String name;
+        private final Consumer<Page> action;
+        private final boolean setup;
+
+        private Step(String name, Consumer<Page> action, boolean setup) {
+            this.name = name;
+            this.action = action;
+            this.setup = setup;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return whether the step makes no checkpoints and may be skipped by restoring a snapshot
+         */
+        public boolean isSetup() {
+            return setup;
+        }
+
+        public void run(Page page) {
+            long start = System.nanoTime();
+            if (setup) {
+                currentSetupStep.set(name);
+            }
+            try {
+                action.accept(page);
+            } finally {
+                if (setup) {
+                    currentSetupStep.remove();
+                }
+                FailureTrace.event("flow.step", name, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private final List<Step> steps;
+
+    private Flow(List<Step> steps) {
+        this.steps = steps;
+    }
+
+    public static Flow of(Step... steps) {
+        if (steps.length == 0) {
+            throw new IllegalArgumentException("A flow needs at least one step");
+        }
+        return new Flow(List.of(steps));
+    }
+
+    public static Step step(String name, Consumer<Page> action) {
+        return new Step(name, action, false);
+    }
+
+    /**
+     * A step that makes no checkpoints. Making one from it fails, since a skipped setup step would silently
+     * drop the checkpoint.
+     */
+    public static Step setup(String name, Consumer<Page> action) {
+        return new Step(name, action, true);
+    }
+
+    /**
+     * @throws IllegalStateException if the current thread is running a setup step
+     */
+    static void checkNotInSetup(String checkpoint) {
+        String step = currentSetupStep.get();
+        if (step != null) {
+            throw new IllegalStateException("Setup step '" + step + "' must not make checkpoints, but made '" + checkpoint
+                    + "'. Use Flow.step for steps with checkpoints");
+        }
+    }
+
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    @Override
+    public String toString() {
+        return steps.toString();
+    }
+}
@@ -0,0 +1,207 @@
+package com.example;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.PlaywrightException;
+import com.microsoft.playwright.options.Cookie;
+import com.microsoft.playwright.options.SameSiteAttribute;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs {@link Flow}s and lets them skip the step prefixes they share with other flows.
+ * <p>
+ * For every flow, the graph finds the longest prefix of {@link Flow.Step#isSetup() setup} steps that at least
+ * one other flow starts with too. Steps with checkpoints are never part of a shared prefix, so restoring a
+ * snapshot cannot skip a checkpoint. With {@code flows.snapshots=true}, the first flow to run such a prefix snapshots its context's storage state,
+ * the page URL and a hash of the page content afterwards. Later flows restore the storage state, open the URL
+ * and continue after the prefix. If the restored page's content hash differs from the snapshot's, the snapshot
+ * is invalidated and the prefix is replayed. Only prefixes whose effect lives in the URL, cookies and local
+ * storage (navigation, login, seeding through the UI) can be restored this way.
+ * <p>
+ * Snapshots are kept per graph, i.e. per test class discovered by {@link TestRegistry}, for as long as the graph
+ * lives, so flows of different classes or apps that happen to use the same step names do not share them.
+ */
+public class FlowGraph {
+
+    private static final Gson gson = new Gson();
+    private static final AtomicLong captured = new AtomicLong();
+    private static final AtomicLong restored = new AtomicLong();
+    private static final AtomicLong invalidated = new AtomicLong();
+    private static final AtomicLong stepsSkipped = new AtomicLong();
+
+    private final Map<String, Flow> flows;
+    // Per graph, i.e. per test class, so flows of other classes with the same step names never restore these
+    private final ConcurrentMap<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final Map<String, Integer> sharedPrefixLengths = new HashMap<>();
+    private final boolean snapshotsEnabled;
+
+    /**
+     * State of the page right after a shared prefix.
+     */
+    private static final class Snapshot {
+
+        private final String storageState;
+        private final String url;
+        private final String contentHash;
+
+        private Snapshot(String storageState, String url, String contentHash) {
+            this.storageState = storageState;
+            this.url = url;
+            this.contentHash = contentHash;
+        }
+    }
+
+    public FlowGraph(Map<String, Flow> flows, boolean snapshotsEnabled) {
+        this.flows = flows;
+        this.snapshotsEnabled = snapshotsEnabled;
+
+        Map<String, Integer> flowsPerPrefix = new HashMap<>();
+        for (Flow flow : flows.values()) {
+            for (int length = 1; length <= flow.getSteps().size(); length++) {
+                flowsPerPrefix.merge(prefixKey(flow, length), 1, Integer::sum);
+            }
+        }
+        for (Map.Entry<String, Flow> entry : flows.entrySet()) {
+            Flow flow = entry.getValue();
+            int shared = 0;
+            // A prefix that is the whole flow leaves nothing to run after restoring it
+            for (int length = 1; length < flow.getSteps().size() && flow.getSteps().get(length - 1).isSetup(); length++) {
+                if (flowsPerPrefix.get(prefixKey(flow, length)) > 1) {
+                    shared = length;
+                }
+            }
+            sharedPrefixLengths.put(entry.getKey(), shared);
+            if (shared > 0) {
+                TestLog.info("Flow '%s' shares the prefix [%s]", entry.getKey(), prefixKey(flow, shared));
+            }
+        }
+    }
+
+    /**
+     * Reads {@code flows.snapshots} (default {@code false}) to decide whether shared prefixes are snapshotted.
+     */
+    public static FlowGraph fromSystemProperties(Map<String, Flow> flows) {
+        return new FlowGraph(flows, Boolean.getBoolean("flows.snapshots"));
+    }
+
+    public void run(String flowName, Page page) {
+        Flow flow = flows.get(flowName);
+        if (flow == null) {
+            throw new IllegalArgumentException("Unknown flow: " + flowName);
+        }
+        List<Flow.Step> steps = flow.getSteps();
+        int prefixLength = snapshotsEnabled ? sharedPrefixLengths.getOrDefault(flowName, 0) : 0;
+        String prefixKey = prefixLength > 0 ? prefixKey(flow, prefixLength) : null;
+
+        int start = 0;
+        if (prefixKey != null) {
+            Snapshot snapshot = snapshots.get(prefixKey);
+            if (snapshot != null) {
+                if (restore(page, snapshot)) {
+                    start = prefixLength;
+                    restored.incrementAndGet();
+                    stepsSkipped.addAndGet(prefixLength);
+                    TestLog.info("Flow '%s' starts from the snapshot of [%s] at %s", flowName, prefixKey, snapshot.url);
+                } else {
+                    snapshots.remove(prefixKey, snapshot);
+                    invalidated.incrementAndGet();
+                    TestLog.info("Snapshot of [%s] is outdated, flow '%s' replays the prefix", prefixKey, flowName);
+                }
+            }
+        }
+        for (int i = start; i < steps.size(); i++) {
+            TestScheduler.throwIfCancelled();
+            steps.get(i).run(page);
+            if (prefixKey != null && start == 0 && i + 1 == prefixLength) {
+                if (!snapshots.containsKey(prefixKey) && snapshots.putIfAbsent(prefixKey, capture(page)) == null) {
+                    captured.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    public static void printStats() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n=== Flow Snapshot Stats ===\n");
+        sb.append("\tSnapshots         : ").append(captured.get()).append("\n");
+        sb.append("\tRestored          : ").append(restored.get()).append("\n");
+        sb.append("\tInvalidated       : ").append(invalidated.get()).append("\n");
+        sb.append("\tSteps Skipped     : ").append(stepsSkipped.get()).append("\n");
+        sb.append("==========================================================");
+        TestLog.info(sb.toString());
+    }
+
+    public static boolean hasSnapshots() {
+        return captured.get() > 0;
+    }
+
+    private static Snapshot capture(Page page) {
+        return new Snapshot(page.context().storageState(), page.url(), CheckpointCache.contentHash(page));
+    }
+
+    /**
+     * Applies the snapshot's storage state to the page's context and opens its URL.
+     *
+     * @return {@code false} if the page no longer has the snapshot's content
+     */
+    private static boolean restore(Page page, Snapshot snapshot) {
+        BrowserContext context = page.context();
+        JsonObject state = JsonParser.parseString(snapshot.storageState).getAsJsonObject();
+        List<Cookie> cookies = new ArrayList<>();
+        for (JsonElement element : state.getAsJsonArray("cookies")) {
+            cookies.add(toCookie(element.getAsJsonObject()));
+        }
+        if (!cookies.isEmpty()) {
+            context.addCookies(cookies);
+        }
+        for (JsonElement element : state.getAsJsonArray("origins")) {
+            JsonObject origin = element.getAsJsonObject();
+            Map<String, String> items = new LinkedHashMap<>();
+            for (JsonElement item : origin.getAsJsonArray("localStorage")) {
+                items.put(item.getAsJsonObject().get("name").getAsString(), item.getAsJsonObject().get("value").getAsString());
+            }
+            context.addInitScript(String.format(
+                    "if (window.location.origin === %s) { for (const [name, value] of Object.entries(%s)) window.localStorage.setItem(name, value); }",
+                    gson.toJson(origin.get("origin").getAsString()), gson.toJson(items)));
+        }
+        try {
+            PhaseTimings.time(PhaseTimings.PAGE_NAVIGATE, () -> page.navigate(snapshot.url));
+        } catch (PlaywrightException e) {
+            TestLog.error("Failed to open snapshot URL %s: %s", snapshot.url, e.getMessage());
+            return false;
+        }
+        return snapshot.contentHash.equals(CheckpointCache.contentHash(page));
+    }
+
+    private static Cookie toCookie(JsonObject json) {
+        Cookie cookie = new Cookie(json.get("name").getAsString(), json.get("value").getAsString())
+                .setDomain(json.get("domain").getAsString())
+                .setPath(json.get("path").getAsString())
+                .setHttpOnly(json.get("httpOnly").getAsBoolean())
+                .setSecure(json.get("secure").getAsBoolean());
+        double expires = json.get("expires").getAsDouble();
+        if (expires > 0) {
+            cookie.setExpires(expires);
+        }
+        if (json.has("sameSite")) {
+            cookie.setSameSite(EyesConfig.getEnumIgnoreCase(SameSiteAttribute.class, json.get("sameSite").getAsString()));
+        }
+        return cookie;
+    }
+
+    private static String prefixKey(Flow flow, int length) {
+        StringJoiner key = new StringJoiner(" > ");
+        for (Flow.Step step : flow.getSteps().subList(0, length)) {
+            key.add(step.getName());
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,339 @@
+package com.example;
+
+import com.applitools.eyes.MatchLevel;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Offline visual validation for runs with Applitools disabled.
+ * <p>
+ * Screenshots are compared against baselines stored under
+ * {@code <baselineDir>/<app>/<test>/<step>@<width>x<height>.png}. A missing baseline is saved as the new one.
+ * Comparison is done in {@value #TILE_SIZE}x{@value #TILE_SIZE} tiles: identical files and identical tile rows
+ * exit early, and the remaining pixels are compared with a tolerance that follows the {@link MatchLevel}.
+ * For the layout match levels, tiles are compared by their perceptual hash only. For the other tolerant levels,
+ * a tile whose perceptual hash is unchanged counts as matching without comparing its pixels, unless the hash
+ * filter is turned off; {@link MatchLevel#EXACT} always compares every pixel. The actual screenshot and a
+ * diff image highlighting the mismatching tiles are written only when a checkpoint does not match.
+ */
+public class LocalVisualDiff {
+
+    static final int TILE_SIZE = 32;
+
+    public enum Outcome {
+        NEW, MATCH, MISMATCH
+    }
+
+    /**
+     * Result of comparing one screenshot with its baseline.
+     */
+    public static final class Comparison {
+
+        private final Outcome outcome;
+        private final int mismatchingTiles;
+        private final int totalTiles;
+        private final Path diffImage;
+
+        Comparison(Outcome outcome, int mismatchingTiles, int totalTiles, Path diffImage) {
+            this.outcome = outcome;
+            this.mismatchingTiles = mismatchingTiles;
+            this.totalTiles = totalTiles;
+            this.diffImage = diffImage;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        public int getMismatchingTiles() {
+            return mismatchingTiles;
+        }
+
+        public int getTotalTiles() {
+            return totalTiles;
+        }
+
+        public Path getDiffImage() {
+            return diffImage;
+        }
+    }
+
+    /**
+     * How far two pixels may differ for a given {@link MatchLevel}.
+     */
+    private static final class Tolerance {
+
+        private final int channelDelta;
+        private final boolean luminanceOnly;
+        private final int maxHashDistance;
+        private final double maxMismatchingPixelRatio;
+
+        private Tolerance(int channelDelta, boolean luminanceOnly, int maxHashDistance, double maxMismatchingPixelRatio) {
+            this.channelDelta = channelDelta;
+            this.luminanceOnly = luminanceOnly;
+            this.maxHashDistance = maxHashDistance;
+            this.maxMismatchingPixelRatio = maxMismatchingPixelRatio;
+        }
+
+        private boolean isLayout() {
+            return maxHashDistance >= 0;
+        }
+
+        /**
+         * @return whether an unchanged perceptual hash may stand in for comparing the pixels. Only the content
+         * levels, which ignore colors, qualify; {@code Strict} and {@code Exact} always compare pixels, since a small
+         * change such as a checkbox's state can leave the hash of its tile unchanged
+         */
+        private boolean acceptsHash() {
+            return luminanceOnly;
+        }
+
+        static Tolerance of(MatchLevel matchLevel) {
+            if (matchLevel == MatchLevel.EXACT) {
+                return new Tolerance(0, false, -1, 0);
+            }
+            // Matched by name, since the set of layout and color-blind levels differs between SDK versions
+            String level = matchLevel.name();
+            if (level.startsWith("LAYOUT")) {
+                return new Tolerance(0, false, 6, 0);
+            }
+            if (level.equals("CONTENT") || level.equals("IGNORE_COLORS")) {
+                return new Tolerance(24, true, -1, 0.001);
+            }
+            return new Tolerance(16, false, -1, 0.001);
+        }
+    }
+
+    private final Path baselineDir;
+    private final boolean hashFilter;
+
+    private final AtomicLong comparisons = new AtomicLong();
+    private final AtomicLong newBaselines = new AtomicLong();
+    private final AtomicLong identical = new AtomicLong();
+    private final AtomicLong matches = new AtomicLong();
+    private final AtomicLong mismatches = new AtomicLong();
+    private final AtomicLong totalCompareNanos = new AtomicLong();
+    private final AtomicLong comparedTiles = new AtomicLong();
+    private final AtomicLong hashFilteredTiles = new AtomicLong();
+
+    public LocalVisualDiff(Path baselineDir) {
+        this(baselineDir, false);
+    }
+
+    /**
+     * @param hashFilter whether tiles with an unchanged perceptual hash skip the pixel comparison for the
+     *                   {@code Content} and {@code IgnoreColors} match levels
+     */
+    public LocalVisualDiff(Path baselineDir, boolean hashFilter) {
+        this.baselineDir = baselineDir;
+        this.hashFilter = hashFilter;
+    }
+
+    /**
+     * Stores baselines in the directory named by the {@code visual.baselineDir} system property,
+     * defaulting to {@code visual-baselines}, and reads {@code visual.hashFilter} (default {@code false}).
+     */
+    public static LocalVisualDiff fromSystemProperties() {
+        Path baselineDir = Paths.get(System.getProperty("visual.baselineDir", "visual-baselines"));
+        TestLog.info("Applitools is disabled, validating checkpoints locally against baselines in: %s", baselineDir.toAbsolutePath());
+        return new LocalVisualDiff(baselineDir, Boolean.getBoolean("visual.hashFilter"));
+    }
+
+    public Comparison compare(String appName, String testName, String stepName, int width, int height,
+                              MatchLevel matchLevel, byte[] actualPng) {
+        long start = System.nanoTime();
+        comparisons.incrementAndGet();
+        try {
+            Path baseline = baselineDir.resolve(sanitize(appName)).resolve(sanitize(testName))
+                    .resolve(sanitize(stepName) + "@" + width + "x" + height + ".png");
+            if (!Files.exists(baseline)) {
+                Files.createDirectories(baseline.getParent());
+                Files.write(baseline, actualPng);
+                newBaselines.incrementAndGet();
+                return new Comparison(Outcome.NEW, 0, 0, null);
+            }
+            byte[] baselinePng = Files.readAllBytes(baseline);
+            if (Arrays.equals(baselinePng, actualPng)) {
+                identical.incrementAndGet();
+                matches.incrementAndGet();
+                return new Comparison(Outcome.MATCH, 0, 0, null);
+            }
+            if (matchLevel == MatchLevel.NONE) {
+                matches.incrementAndGet();
+                return new Comparison(Outcome.MATCH, 0, 0, null);
+            }
+
+            BufferedImage expected = decode(baselinePng, baseline.toString());
+            BufferedImage actual = decode(actualPng, stepName);
+            boolean[][] mismatchingTiles = diffTiles(expected, actual, Tolerance.of(matchLevel));
+            int tilesX = mismatchingTiles.length;
+            int tilesY = tilesX == 0 ? 0 : mismatchingTiles[0].length;
+            int mismatching = 0;
+            for (boolean[] column : mismatchingTiles) {
+                for (boolean tile : column) {
+                    if (tile) {
+                        mismatching++;
+                    }
+                }
+            }
+            if (mismatching == 0) {
+                matches.incrementAndGet();
+                return new Comparison(Outcome.MATCH, 0, tilesX * tilesY, null);
+            }
+
+            mismatches.incrementAndGet();
+            String baseName = baseline.getFileName().toString().replace(".png", "");
+            Files.write(baseline.resolveSibling(baseName + ".actual.png"), actualPng);
+            Path diffImage = baseline.resolveSibling(baseName + ".diff.png");
+            ImageIO.write(highlight(actual, mismatchingTiles), "png", diffImage.toFile());
+            return new Comparison(Outcome.MISMATCH, mismatching, tilesX * tilesY, diffImage);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compare checkpoint '" + stepName + "' of test '" + testName + "'", e);
+        } finally {
+            totalCompareNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    public void printStats() {
+        long count = comparisons.get();
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n=== Local Visual Diff Stats ===\n");
+        sb.append("\tCheckpoints       : ").append(count).append("\n");
+        sb.append("\tNew Baselines     : ").append(newBaselines.get()).append("\n");
+        sb.append("\tMatches           : ").append(matches.get()).append(" (").append(identical.get()).append(" byte-identical)\n");
+        sb.append("\tMismatches        : ").append(mismatches.get()).append("\n");
+        sb.append("\tHash-Filtered     : ").append(hashFilteredTiles.get()).append(" of ").append(comparedTiles.get()).append(" tile(s)\n");
+        sb.append("\tAvg Compare       : ").append(count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalCompareNanos.get() / count)).append(" ms\n");
+        sb.append("\tBaselines         : ").append(baselineDir.toAbsolutePath()).append("\n");
+        sb.append("==========================================================");
+        TestLog.info(sb.toString());
+    }
+
+    /**
+     * Returns, per tile, whether the two images differ beyond the tolerance.
+     * Images of different sizes are compared over the larger size, so the extra area always mismatches.
+     */
+    private boolean[][] diffTiles(BufferedImage expected, BufferedImage actual, Tolerance tolerance) {
+        int width = Math.max(expected.getWidth(), actual.getWidth());
+        int height = Math.max(expected.getHeight(), actual.getHeight());
+        int tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        int tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        boolean[][] mismatching = new boolean[tilesX][tilesY];
+        int[] expectedRow = new int[TILE_SIZE];
+        int[] actualRow = new int[TILE_SIZE];
+
+        for (int tx = 0; tx < tilesX; tx++) {
+            for (int ty = 0; ty < tilesY; ty++) {
+                int x0 = tx * TILE_SIZE;
+                int y0 = ty * TILE_SIZE;
+                int w = Math.min(TILE_SIZE, width - x0);
+                int h = Math.min(TILE_SIZE, height - y0);
+                if (x0 + w > expected.getWidth() || y0 + h > expected.getHeight()
+                        || x0 + w > actual.getWidth() || y0 + h > actual.getHeight()) {
+                    mismatching[tx][ty] = true;
+                    continue;
+                }
+                comparedTiles.incrementAndGet();
+                if (tolerance.isLayout()) {
+                    long expectedHash = differenceHash(expected, x0, y0, w, h);
+                    long actualHash = differenceHash(actual, x0, y0, w, h);
+                    mismatching[tx][ty] = Long.bitCount(expectedHash ^ actualHash) > tolerance.maxHashDistance;
+                    continue;
+                }
+                // 144 samples instead of up to 2048 pixels; only the content levels accept this approximation
+                if (hashFilter && tolerance.acceptsHash()
+                        && differenceHash(expected, x0, y0, w, h) == differenceHash(actual, x0, y0, w, h)) {
+                    hashFilteredTiles.incrementAndGet();
+                    continue;
+                }
+                int differentPixels = 0;
+                for (int y = y0; y < y0 + h; y++) {
+                    expected.getRGB(x0, y, w, 1, expectedRow, 0, TILE_SIZE);
+                    actual.getRGB(x0, y, w, 1, actualRow, 0, TILE_SIZE);
+                    if (Arrays.equals(expectedRow, 0, w, actualRow, 0, w)) {
+                        continue;
+                    }
+                    for (int x = 0; x < w; x++) {
+                        if (!pixelsMatch(expectedRow[x], actualRow[x], tolerance)) {
+                            differentPixels++;
+                        }
+                    }
+                }
+                mismatching[tx][ty] = differentPixels > tolerance.maxMismatchingPixelRatio * w * h;
+            }
+        }
+        return mismatching;
+    }
+
+    private static boolean pixelsMatch(int expected, int actual, Tolerance tolerance) {
+        if (expected == actual) {
+            return true;
+        }
+        if (tolerance.luminanceOnly) {
+            return Math.abs(luminance(expected) - luminance(actual)) <= tolerance.channelDelta;
+        }
+        return Math.abs(((expected >> 16) & 0xFF) - ((actual >> 16) & 0xFF)) <= tolerance.channelDelta
+                && Math.abs(((expected >> 8) & 0xFF) - ((actual >> 8) & 0xFF)) <= tolerance.channelDelta
+                && Math.abs((expected & 0xFF) - (actual & 0xFF)) <= tolerance.channelDelta;
+    }
+
+    private static int luminance(int rgb) {
+        return (299 * ((rgb >> 16) & 0xFF) + 587 * ((rgb >> 8) & 0xFF) + 114 * (rgb & 0xFF)) / 1000;
+    }
+
+    /**
+     * 64-bit difference hash of an area: the area is sampled on a 9x8 grid of luminance values and each bit
+     * tells whether a sample is brighter than its right neighbour.
+     */
+    static long differenceHash(BufferedImage image, int x0, int y0, int w, int h) {
+        long hash = 0;
+        for (int gy = 0; gy < 8; gy++) {
+            int y = y0 + Math.min(h - 1, gy * h / 8);
+            int previous = luminance(image.getRGB(x0, y));
+            for (int gx = 1; gx < 9; gx++) {
+                int x = x0 + Math.min(w - 1, gx * w / 9);
+                int current = luminance(image.getRGB(x, y));
+                hash = (hash << 1) | (previous > current ? 1 : 0);
+                previous = current;
+            }
+        }
+        return hash;
+    }
+
+    private static BufferedImage highlight(BufferedImage actual, boolean[][] mismatchingTiles) {
+        BufferedImage diff = new BufferedImage(actual.getWidth(), actual.getHeight(), BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < actual.getHeight(); y++) {
+            for (int x = 0; x < actual.getWidth(); x++) {
+                int rgb = actual.getRGB(x, y);
+                if (mismatchingTiles[x / TILE_SIZE][y / TILE_SIZE]) {
+                    // Blend the pixel with red, so the mismatching tiles stand out
+                    rgb = (((((rgb >> 16) & 0xFF) + 255) / 2) << 16) | ((((rgb >> 8) & 0xFF) / 2) << 8) | ((rgb & 0xFF) / 2);
+                }
+                diff.setRGB(x, y, rgb);
+            }
+        }
+        return diff;
+    }
+
+    private static BufferedImage decode(byte[] png, String description) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        if (image == null) {
+            throw new IOException("Not a readable image: " + description);
+        }
+        return image;
+    }
+
+    private static String sanitize(String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]+", "_");
+    }
+}
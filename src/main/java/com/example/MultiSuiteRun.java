@@ -0,0 +1,49 @@
+package com.example;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the {@link SequentialTests} and {@link ParallelTests} suites at the same time in one JVM.
+ * Each suite reports into its own batch through its own Visual Grid runner (see {@link BatchManager}),
+ * while both share one browser pool and the check pipeline.
+ */
+public class MultiSuiteRun {
+
+    public static void main(String[] args) {
+        int parallelism = TestScheduler.parallelismFromSystemProperties();
+        long timeoutSeconds = TestScheduler.timeoutFromSystemProperties();
+        Map<String, Integer> suiteParallelism = new LinkedHashMap<>();
+        suiteParallelism.put(SequentialTests.appName, 1);
+        suiteParallelism.put(ParallelTests.appName, parallelism);
+        Map<String, List<TestCase>> suites = new LinkedHashMap<>();
+        suites.put(SequentialTests.appName, TestRegistry.discover(SequentialTests.class));
+        suites.put(ParallelTests.appName, TestRegistry.discover(ParallelTests.class));
+
+        try (BrowserPool browserPool = BrowserPool.fromSystemProperties(parallelism + 1);
+             ExecutorService suiteRunners = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Map.Entry<String, List<TestCase>> suite : suites.entrySet()) {
+                String suiteName = suite.getKey();
+                ApplitoolsUtil.startSuite(suiteName, "Playwright-Java tests (" + suiteName + ")");
+                suiteRunners.execute(() -> runSuite(browserPool, suiteName, suiteParallelism.get(suiteName), timeoutSeconds, suite.getValue()));
+            }
+            // Closing the executor waits for both suites
+        } finally {
+            ApplitoolsUtil.closeRunnerAndBatch();
+        }
+    }
+
+    private static void runSuite(BrowserPool browserPool, String suiteName, int parallelism, long timeoutSeconds, List<TestCase> tests) {
+        try {
+            new TestScheduler(browserPool, suiteName, parallelism, timeoutSeconds).run(tests);
+        } catch (RuntimeException e) {
+            TestLog.error("Suite '%s' failed: %s", suiteName, e);
+        } finally {
+            // Report this suite as soon as it is done, without waiting for the other one
+            ApplitoolsUtil.closeSuite(suiteName);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.example;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Route;
+import com.microsoft.playwright.options.HarMode;
+import com.microsoft.playwright.options.RouteFromHarUpdateContentPolicy;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the network traffic of each test flow into a HAR file, or replays it so flows run against a
+ * local stand-in of the target site.
+ * <p>
+ * In {@link Mode#RECORD} every context records into {@code <archiveDir>/<flow>.har}; Playwright writes the
+ * file when the context is closed. In {@link Mode#REPLAY} all HAR files of the archive are parsed once into
+ * an in-memory response cache that is shared by every context, and each request is fulfilled from it
+ * without touching the network. Requests that were never recorded are aborted, so a replayed run is
+ * deterministic and works offline.
+ */
+public class NetworkArchive {
+
+    public enum Mode {
+        LIVE, RECORD, REPLAY
+    }
+
+    private static final Set<String> SKIPPED_HEADERS = Set.of("content-length", "content-encoding", "transfer-encoding");
+
+    /**
+     * A recorded response, ready to be served.
+     */
+    private static final class CachedResponse {
+
+        private final int status;
+        private final Map<String, String> headers;
+        private final byte[] body;
+
+        private CachedResponse(int status, Map<String, String> headers, byte[] body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+
+    private final Mode mode;
+    private final Path archiveDir;
+    private final Map<String, CachedResponse> responses = new ConcurrentHashMap<>();
+    private final Set<String> reportedMisses = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong contexts = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong totalFulfillNanos = new AtomicLong();
+
+    public NetworkArchive(Mode mode, Path archiveDir) {
+        this.mode = mode;
+        this.archiveDir = archiveDir;
+        try {
+            if (mode == Mode.RECORD) {
+                Files.createDirectories(archiveDir);
+            } else if (mode == Mode.REPLAY) {
+                loadArchive();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open network archive: " + archiveDir, e);
+        }
+    }
+
+    /**
+     * Creates an archive for the {@code network.mode} system property ({@code live}, {@code record} or
+     * {@code replay}, default {@code live}) in the {@code network.archiveDir} directory (default
+     * {@code network-archive}), or returns {@code null} for live runs.
+     */
+    public static NetworkArchive fromSystemProperties() {
+        Mode mode = EyesConfig.getEnumIgnoreCase(Mode.class, System.getProperty("network.mode", "live"));
+        if (mode == Mode.LIVE) {
+            return null;
+        }
+        Path archiveDir = Paths.get(System.getProperty("network.archiveDir", "network-archive"));
+        TestLog.info("Network mode %s, archive: %s", mode.name().toLowerCase(), archiveDir.toAbsolutePath());
+        return new NetworkArchive(mode, archiveDir);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Routes the context according to the mode. Must be called before the context sends any request.
+     *
+     * @param flowName name of the test flow, used as the name of the HAR file when recording
+     */
+    public void attach(BrowserContext context, String flowName) {
+        contexts.incrementAndGet();
+        if (mode == Mode.RECORD) {
+            context.routeFromHAR(archiveDir.resolve(sanitize(flowName) + ".har"), new BrowserContext.RouteFromHAROptions()
+                    .setUpdate(true)
+                    .setUpdateContent(RouteFromHarUpdateContentPolicy.EMBED)
+                    .setUpdateMode(HarMode.MINIMAL));
+        } else if (mode == Mode.REPLAY) {
+            context.route("**/*", this::serve);
+        }
+    }
+
+    public void printStats() {
+        long hitCount = hits.get();
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n=== Network Archive Stats ===\n");
+        sb.append("\tMode              : ").append(mode.name().toLowerCase()).append("\n");
+        sb.append("\tArchive           : ").append(archiveDir.toAbsolutePath()).append("\n");
+        sb.append("\tContexts          : ").append(contexts.get()).append("\n");
+        if (mode == Mode.REPLAY) {
+            sb.append("\tCached Responses  : ").append(responses.size()).append("\n");
+            sb.append("\tServed From Cache : ").append(hitCount).append("\n");
+            sb.append("\tAborted (missing) : ").append(misses.get()).append("\n");
+            sb.append("\tAvg Fulfill       : ").append(hitCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalFulfillNanos.get() / hitCount)).append(" us\n");
+        }
+        sb.append("==========================================================");
+        TestLog.info(sb.toString());
+    }
+
+    private void serve(Route route) {
+        long start = System.nanoTime();
+        String key = key(route.request().method(), route.request().url());
+        CachedResponse response = responses.get(key);
+        if (response == null) {
+            misses.incrementAndGet();
+            if (reportedMisses.add(key)) {
+                TestLog.error("No recorded response for %s, aborting it. Record the flows again with -Dnetwork.mode=record", key);
+            }
+            route.abort();
+            return;
+        }
+        route.fulfill(new Route.FulfillOptions()
+                .setStatus(response.status)
+                .setHeaders(response.headers)
+                .setBodyBytes(response.body));
+        hits.incrementAndGet();
+        totalFulfillNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    private void loadArchive() throws IOException {
+        if (!Files.isDirectory(archiveDir)) {
+            throw new IllegalStateException("Network archive " + archiveDir.toAbsolutePath()
+                    + " does not exist. Record it first with -Dnetwork.mode=record");
+        }
+        int files = 0;
+        try (DirectoryStream<Path> hars = Files.newDirectoryStream(archiveDir, "*.har")) {
+            for (Path har : hars) {
+                try (Reader reader = Files.newBufferedReader(har, StandardCharsets.UTF_8)) {
+                    JsonArray entries = JsonParser.parseReader(reader).getAsJsonObject()
+                            .getAsJsonObject("log").getAsJsonArray("entries");
+                    for (JsonElement entry : entries) {
+                        addEntry(entry.getAsJsonObject());
+                    }
+                    files++;
+                } catch (JsonParseException | IllegalStateException | NullPointerException e) {
+                    throw new IllegalStateException("Malformed HAR file: " + har, e);
+                }
+            }
+        }
+        TestLog.info("Loaded %d response(s) from %d HAR file(s) in %s", responses.size(), files, archiveDir);
+    }
+
+    private void addEntry(JsonObject entry) {
+        JsonObject request = entry.getAsJsonObject("request");
+        JsonObject response = entry.getAsJsonObject("response");
+        int status = response.get("status").getAsInt();
+        if (status <= 0) {
+            // Requests that failed or were aborted while recording have no response to replay
+            return;
+        }
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (JsonElement header : response.getAsJsonArray("headers")) {
+            String name = header.getAsJsonObject().get("name").getAsString();
+            if (!SKIPPED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                headers.put(name, header.getAsJsonObject().get("value").getAsString());
+            }
+        }
+        JsonObject content = response.getAsJsonObject("content");
+        byte[] body = new byte[0];
+        if (content != null && content.has("text")) {
+            String text = content.get("text").getAsString();
+            body = content.has("encoding") && "base64".equals(content.get("encoding").getAsString())
+                    ? Base64.getDecoder().decode(text)
+                    : text.getBytes(StandardCharsets.UTF_8);
+        }
+        // The same URL is usually loaded by several flows; they all recorded the same response
+        responses.putIfAbsent(key(request.get("method").getAsString(), request.get("url").getAsString()),
+                new CachedResponse(status, headers, body));
+    }
+
+    private static String key(String method, String url) {
+        return method + " " + url;
+    }
+
+    private static String sanitize(String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
@@ -1,120 +1,88 @@
 package com.example;
 
-import com.applitools.eyes.playwright.fluent.Target;
 import com.microsoft.playwright.*;
 
-import java.util.concurrent.*;
+import java.util.List;
 
 public class ParallelTests {
 
-    private static final String appName = "The Internet-Parallel";
+    static final String appName = "The Internet-Parallel";
 
     public static void main(String[] args) {
-        ExecutorService executor = Executors.newFixedThreadPool(2); // Run 2 tests in parallel
+        List<TestCase> tests = TestRegistry.discover(ParallelTests.class);
+        int parallelism = TestScheduler.parallelismFromSystemProperties();
+        TestScheduler.ExecutionMode executionMode = TestScheduler.executionModeFromSystemProperties();
+        long timeoutSeconds = TestScheduler.timeoutFromSystemProperties();
+        int[] sweepLevels = ConcurrencySweep.levelsFromSystemProperties();
 
-        try {
+        try (RunHistory runHistory = RunHistory.fromSystemProperties()) {
             ApplitoolsUtil.startBatch();
-
-            Callable<Void> checkboxTask = () -> {
-                try (Playwright playwright = Playwright.create()) {
-                    testCheckboxNavigation(playwright);
-                }
-                return null;
-            };
-
-            Callable<Void> contextMenuTask = () -> {
-                try (Playwright playwright = Playwright.create()) {
-                    testContextMenuNavigation(playwright);
+            if (sweepLevels.length > 0) {
+                ConcurrencySweep.run(tests, appName, sweepLevels, executionMode, timeoutSeconds, runHistory);
+            } else {
+                try (BrowserPool browserPool = BrowserPool.fromSystemProperties(parallelism)) {
+                    new TestScheduler(browserPool, appName, parallelism, timeoutSeconds, executionMode)
+                            .setRunHistory(runHistory)
+                            .run(tests);
                 }
-                return null;
-            };
-
-            Future<Void> future1 = executor.submit(checkboxTask);
-            Future<Void> future2 = executor.submit(contextMenuTask);
-
-            try {
-                future1.get(60, TimeUnit.SECONDS);
-            } catch (TimeoutException e) {
-                System.err.println("Checkbox test timed out");
-            }
-
-            try {
-                future2.get(60, TimeUnit.SECONDS);
-            } catch (TimeoutException e) {
-                System.err.println("Context menu test timed out");
             }
-
         } catch (Exception e) {
-            e.printStackTrace();
+            TestLog.error(e, "Parallel tests failed: %s", e);
         } finally {
-            executor.shutdownNow();
             ApplitoolsUtil.closeRunnerAndBatch(); // Collect results from all threads
         }
     }
 
     // ---------- Individual Tests ----------
 
-    private static void testCheckboxNavigation(Playwright playwright) {
-        Browser browser = launchBrowser(playwright);
-        Page page = browser.newPage();
-
-        try {
-            ApplitoolsUtil.initEyes(page, appName, "Checkbox Navigation Test", true);
-            navigateToHomepage(page);
-            openCheckboxesPage(page);
-            checkFirstCheckbox(page);
-            goBackToHomepage(page);
-        } finally {
-            ApplitoolsUtil.closeEyes(true);
-            browser.close();
-        }
+    @VisualTest(name = "Checkbox Navigation Test")
+    static Flow testCheckboxNavigation() {
+        return Flow.of(
+                Flow.setup("navigateToHomepage", ParallelTests::navigateToHomepage),
+                Flow.step("checkHomepage", ParallelTests::checkHomepage),
+                Flow.step("openCheckboxesPage", ParallelTests::openCheckboxesPage),
+                Flow.step("checkFirstCheckbox", ParallelTests::checkFirstCheckbox),
+                Flow.step("goBackToHomepage", ParallelTests::goBackToHomepage));
     }
 
-    private static void testContextMenuNavigation(Playwright playwright) {
-        Browser browser = launchBrowser(playwright);
-        Page page = browser.newPage();
-
-        try {
-            ApplitoolsUtil.initEyes(page, appName, "Context Menu Navigation Test", true);
-            navigateToHomepage(page);
-            openContextMenu(page);
-            goBackToHomepage(page);
-        } finally {
-            ApplitoolsUtil.closeEyes(true);
-            browser.close();
-        }
+    @VisualTest(name = "Context Menu Navigation Test")
+    static Flow testContextMenuNavigation() {
+        return Flow.of(
+                Flow.setup("navigateToHomepage", ParallelTests::navigateToHomepage),
+                Flow.step("checkHomepage", ParallelTests::checkHomepage),
+                Flow.step("openContextMenu", ParallelTests::openContextMenu),
+                Flow.step("goBackToHomepage", ParallelTests::goBackToHomepage));
     }
 
-    private static Browser launchBrowser(Playwright playwright) {
-        return playwright.chromium().launch(new BrowserType.LaunchOptions().setHeadless(false));
+    private static void navigateToHomepage(Page page) {
+        PhaseTimings.time(PhaseTimings.PAGE_NAVIGATE, () -> page.navigate("https://the-internet.herokuapp.com/"));
     }
 
-    private static void navigateToHomepage(Page page) {
-        page.navigate("https://the-internet.herokuapp.com/");
-        ApplitoolsUtil.getEyes().check("Home", Target.window().fully());
+    private static void checkHomepage(Page page) {
+        ApplitoolsUtil.check("Home", CheckTarget.window());
     }
 
     private static void openCheckboxesPage(Page page) {
-        page.click("text=Checkboxes");
-        ApplitoolsUtil.getEyes().check("openCheckboxesPage", Target.window().fully());
-        ApplitoolsUtil.getEyes().check("openCheckboxesPage-region", Target.region("text=Checkboxes"));
+        PhaseTimings.time(PhaseTimings.PAGE_CLICK, () -> page.click("text=Checkboxes"));
+        ApplitoolsUtil.check("openCheckboxesPage", CheckTarget.window());
+        ApplitoolsUtil.check("openCheckboxesPage-region", CheckTarget.region("text=Checkboxes"));
     }
 
     private static void openContextMenu(Page page) {
-        page.click("text=Context Menu");
-        ApplitoolsUtil.getEyes().check("openContextMenu", Target.window().fully());
+        PhaseTimings.time(PhaseTimings.PAGE_CLICK, () -> page.click("text=Context Menu"));
+        ApplitoolsUtil.check("openContextMenu", CheckTarget.window());
     }
 
     private static void checkFirstCheckbox(Page page) {
         Locator firstCheckbox = page.locator("form#checkboxes input[type='checkbox']").first();
         if (!firstCheckbox.isChecked()) {
-            firstCheckbox.check();
+            PhaseTimings.time(PhaseTimings.PAGE_CHECK, firstCheckbox::check);
         }
-        ApplitoolsUtil.getEyes().check("checkFirstCheckbox", Target.window().fully());
+        ApplitoolsUtil.check("checkFirstCheckbox", CheckTarget.window());
     }
 
     private static void goBackToHomepage(Page page) {
-        page.goBack();
-        ApplitoolsUtil.getEyes().check("goBackToHomepage", Target.window().fully());
+        PhaseTimings.time(PhaseTimings.PAGE_GO_BACK, () -> page.goBack());
+        ApplitoolsUtil.check("goBackToHomepage", CheckTarget.window());
     }
 }
@@ -0,0 +1,209 @@
+package com.example;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Process-wide timings of the phases of a run: browser launch and lease, Playwright actions,
+ * Eyes open/check/close, runner close and the overhead of {@link FailureTrace}.
+ * <p>
+ * Each phase is recorded into its own {@link LatencyHistogram}. {@link #report()} prints a
+ * p50/p95/p99 table, compares it with the previous run's JSON export and writes the current timings
+ * as Prometheus text format and JSON, so a regression in any phase is visible across runs.
+ */
+public class PhaseTimings {
+
+    public static final String BROWSER_LAUNCH = "browser.launch";
+    public static final String BROWSER_LEASE = "browser.lease";
+    public static final String PAGE_NAVIGATE = "page.navigate";
+    public static final String PAGE_CLICK = "page.click";
+    public static final String PAGE_CHECK = "page.check";
+    public static final String PAGE_GO_BACK = "page.goBack";
+    public static final String EYES_OPEN = "eyes.open";
+    public static final String EYES_CHECK = "eyes.check";
+    public static final String EYES_CLOSE = "eyes.close";
+    public static final String RUNNER_RESULTS = "runner.results";
+    public static final String RUNNER_CLOSE = "runner.close";
+    public static final String TRACE_START = "trace.start";
+    public static final String TRACE_STOP = "trace.stop";
+
+    private static final double[] PERCENTILES = {50, 95, 99};
+    private static final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    private PhaseTimings() {
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos}, taken from {@link System#nanoTime()}.
+     */
+    public static void record(String phase, long startNanos) {
+        record(phase, startNanos, null);
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos}, and adds it to the {@link FailureTrace} of the
+     * current thread's test together with the detail, e.g. the name of a checkpoint.
+     */
+    public static void record(String phase, long startNanos, String detail) {
+        long elapsed = System.nanoTime() - startNanos;
+        histograms.computeIfAbsent(phase, name -> new LatencyHistogram()).record(elapsed);
+        FailureTrace.event(phase, detail, elapsed);
+    }
+
+    /**
+     * Returns the histogram of the phase, or {@code null} if nothing was recorded for it yet.
+     */
+    public static LatencyHistogram get(String phase) {
+        return histograms.get(phase);
+    }
+
+    /**
+     * Runs the action and records how long it took, whether or not it succeeded.
+     * Does not run the action if the current thread's test was cancelled, see {@link TestScheduler#throwIfCancelled()}.
+     */
+    public static void time(String phase, Runnable action) {
+        TestScheduler.throwIfCancelled();
+        long start = System.nanoTime();
+        try {
+            action.run();
+        } finally {
+            record(phase, start);
+        }
+    }
+
+    /**
+     * Prints the timings of this run next to those of the previous run, then exports them to
+     * {@code <metrics.dir>/<metrics.name>.prom} and {@code .json} (defaults {@code target/metrics}
+     * and {@code phase-timings}). A phase whose p95 grew by more than {@code metrics.regressionPercent}
+     * (default 20) is flagged as a regression.
+     */
+    public static void report() {
+        if (histograms.isEmpty()) {
+            return;
+        }
+        Path directory = Paths.get(System.getProperty("metrics.dir", "target/metrics"));
+        String fileName = System.getProperty("metrics.name", "phase-timings");
+        int regressionPercent = Integer.getInteger("metrics.regressionPercent", 20);
+        Path jsonFile = directory.resolve(fileName + ".json");
+        Path promFile = directory.resolve(fileName + ".prom");
+
+        Map<String, LatencyHistogram> phases = new TreeMap<>(histograms);
+        Map<String, Long> previousP95 = readPreviousP95(jsonFile);
+        printTable(phases, previousP95, regressionPercent);
+        try {
+            Files.createDirectories(directory);
+            writePrometheus(phases, promFile);
+            writeJson(phases, jsonFile);
+            TestLog.info("Phase timings written to %s and %s", promFile.toAbsolutePath(), jsonFile.toAbsolutePath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write phase timings to " + directory, e);
+        }
+    }
+
+    private static void printTable(Map<String, LatencyHistogram> phases, Map<String, Long> previousP95, int regressionPercent) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n=== Phase Timings (ms) ===\n");
+        sb.append(String.format("\t%-16s %7s %9s %9s %9s %9s %9s  %s%n", "Phase", "Count", "Mean", "p50", "p95", "p99", "Max", "p95 vs previous run"));
+        for (Map.Entry<String, LatencyHistogram> entry : phases.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            long p95 = histogram.getPercentileMicros(95);
+            sb.append(String.format("\t%-16s %7d %9s %9s %9s %9s %9s  %s%n", entry.getKey(), histogram.getCount(),
+                    millis(histogram.getMeanMicros()), millis(histogram.getPercentileMicros(50)), millis(p95),
+                    millis(histogram.getPercentileMicros(99)), millis(histogram.getMaxMicros()),
+                    compare(previousP95.get(entry.getKey()), p95, regressionPercent)));
+        }
+        sb.append("==========================================================");
+        TestLog.info(sb.toString());
+    }
+
+    private static String compare(Long previousMicros, long currentMicros, int regressionPercent) {
+        if (previousMicros == null) {
+            return "-";
+        }
+        if (previousMicros == 0) {
+            return currentMicros == 0 ? "+0%" : "new";
+        }
+        long change = Math.round((currentMicros - previousMicros) * 100.0 / previousMicros);
+        String text = String.format("%+d%% (was %s)", change, millis(previousMicros));
+        return change > regressionPercent ? text + "  REGRESSION" : text;
+    }
+
+    private static String millis(long micros) {
+        return String.format(Locale.ROOT, "%.1f", micros / 1000.0);
+    }
+
+    private static double seconds(long micros) {
+        return micros / 1_000_000.0;
+    }
+
+    private static void writePrometheus(Map<String, LatencyHistogram> phases, Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("# HELP test_phase_duration_seconds Duration of test run phases.\n");
+            out.write("# TYPE test_phase_duration_seconds summary\n");
+            for (Map.Entry<String, LatencyHistogram> entry : phases.entrySet()) {
+                LatencyHistogram histogram = entry.getValue();
+                String phase = entry.getKey();
+                for (double percentile : PERCENTILES) {
+                    out.write(String.format(Locale.ROOT, "test_phase_duration_seconds{phase=\"%s\",quantile=\"%s\"} %.6f%n",
+                            phase, percentile / 100, seconds(histogram.getPercentileMicros(percentile))));
+                }
+                out.write(String.format(Locale.ROOT, "test_phase_duration_seconds_sum{phase=\"%s\"} %.6f%n", phase, seconds(histogram.getTotalMicros())));
+                out.write(String.format(Locale.ROOT, "test_phase_duration_seconds_count{phase=\"%s\"} %d%n", phase, histogram.getCount()));
+            }
+        }
+    }
+
+    private static void writeJson(Map<String, LatencyHistogram> phases, Path file) throws IOException {
+        try (JsonWriter json = new JsonWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            json.setIndent("  ");
+            json.beginObject();
+            json.name("timestamp").value(Instant.now().toString());
+            json.name("phases").beginObject();
+            for (Map.Entry<String, LatencyHistogram> entry : phases.entrySet()) {
+                LatencyHistogram histogram = entry.getValue();
+                json.name(entry.getKey()).beginObject();
+                json.name("count").value(histogram.getCount());
+                json.name("meanMicros").value(histogram.getMeanMicros());
+                json.name("p50Micros").value(histogram.getPercentileMicros(50));
+                json.name("p95Micros").value(histogram.getPercentileMicros(95));
+                json.name("p99Micros").value(histogram.getPercentileMicros(99));
+                json.name("maxMicros").value(histogram.getMaxMicros());
+                json.endObject();
+            }
+            json.endObject();
+            json.endObject();
+        }
+    }
+
+    private static Map<String, Long> readPreviousP95(Path file) {
+        Map<String, Long> previous = new HashMap<>();
+        if (!Files.isRegularFile(file)) {
+            return previous;
+        }
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            JsonObject phases = JsonParser.parseReader(reader).getAsJsonObject().getAsJsonObject("phases");
+            for (Map.Entry<String, JsonElement> entry : phases.entrySet()) {
+                previous.put(entry.getKey(), entry.getValue().getAsJsonObject().get("p95Micros").getAsLong());
+            }
+        } catch (IOException | JsonParseException | IllegalStateException | NullPointerException e) {
+            TestLog.error("Ignoring unreadable previous phase timings %s: %s", file, e);
+        }
+        return previous;
+    }
+}
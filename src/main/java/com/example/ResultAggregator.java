@@ -0,0 +1,332 @@
+package com.example;
+
+import com.applitools.eyes.RectangleSize;
+import com.applitools.eyes.TestResultContainer;
+import com.applitools.eyes.TestResults;
+import com.applitools.eyes.visualgrid.model.RenderBrowserInfo;
+import com.google.gson.stream.JsonWriter;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Consumes each {@link TestResultContainer} exactly once as it becomes available, keeps running
+ * counters and streams every result to a JUnit XML report and a JSON report.
+ * <p>
+ * Nothing is re-read or re-rendered: each result costs a constant amount of work, and the summary
+ * printed by {@link #close()} comes straight from the counters. The {@code tests}, {@code failures},
+ * {@code errors} and {@code skipped} attributes of the JUnit {@code <testsuite>} are only known at the end,
+ * so the start tag reserves room for them and {@link #close()} writes them in place.
+ */
+public class ResultAggregator implements AutoCloseable {
+
+    // Room for the four counts of up to 10 digits each, padded with spaces inside the start tag
+    private static final int COUNTS_WIDTH = 96;
+
+    private final String suiteName;
+    private final Path xmlFile;
+    private final Path jsonFile;
+    private final Writer xmlOut;
+    private final Writer jsonOut;
+    private final XMLStreamWriter xml;
+    private final JsonWriter json;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long countsOffset;
+
+    private int testCases;
+    private int total, passed, unresolved, failed, exceptions;
+    private int matches, mismatches, missing;
+    private boolean closed;
+
+    public ResultAggregator(Path directory, String fileName, String suiteName) {
+        this.suiteName = suiteName;
+        this.xmlFile = directory.resolve(fileName + ".xml");
+        this.jsonFile = directory.resolve(fileName + ".json");
+        try {
+            Files.createDirectories(directory);
+            xmlOut = Files.newBufferedWriter(xmlFile, StandardCharsets.UTF_8);
+            jsonOut = Files.newBufferedWriter(jsonFile, StandardCharsets.UTF_8);
+            // The start tag is written by hand, so the position of its counts is known when they are filled in
+            String header = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<testsuite name=\"" + escapeAttribute(suiteName)
+                    + "\" timestamp=\"" + Instant.now() + "\" ";
+            xmlOut.write(header);
+            countsOffset = header.getBytes(StandardCharsets.UTF_8).length;
+            xmlOut.write(formatCounts());
+            xmlOut.write(">\n");
+            xml = XMLOutputFactory.newFactory().createXMLStreamWriter(xmlOut);
+
+            json = new JsonWriter(jsonOut);
+            json.setIndent("  ");
+            json.beginObject();
+            json.name("suite").value(suiteName);
+            json.name("results").beginArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create result reports in " + directory, e);
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Failed to start JUnit report " + xmlFile, e);
+        }
+    }
+
+    /**
+     * Writes the reports to the {@code results.dir} directory (default {@code target/applitools-results}),
+     * in files named by {@code results.name} (default {@code applitools-results}).
+     */
+    public static ResultAggregator fromSystemProperties(String suiteName) {
+        Path directory = Paths.get(System.getProperty("results.dir", "target/applitools-results"));
+        String fileName = System.getProperty("results.name", "applitools-results");
+        return new ResultAggregator(directory, fileName, suiteName);
+    }
+
+    public void accept(TestResultContainer container) {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Result aggregator is already closed");
+            }
+            total++;
+            StringBuilder sb = new StringBuilder();
+            if (container.getException() != null) {
+                exceptions++;
+                sb.append("\t❌ Exception occurred during test:\n");
+                sb.append("\t").append(container.getException().getMessage()).append("\n");
+                sb.append("\t----------------------------------------\n");
+                writeException(container.getException());
+            } else if (container.getTestResults() != null) {
+                TestResults result = container.getTestResults();
+                String outcome = outcomeOf(result);
+                if ("unresolved".equals(outcome)) {
+                    unresolved++;
+                } else if ("failed".equals(outcome)) {
+                    failed++;
+                } else if (result.isPassed()) {
+                    passed++;
+                }
+                matches += result.getMatches();
+                mismatches += result.getMismatches();
+                missing += result.getMissing();
+
+                FailureTrace.flushMismatch(result.getName(), result.getMismatches());
+                String target = describeTarget(container.getBrowserInfo());
+                appendResult(sb, result, container.getBrowserInfo());
+                writeResult(result, target, outcome);
+            }
+            if (!sb.isEmpty()) {
+                TestLog.info(sb.toString().stripTrailing());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write result reports", e);
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Failed to write JUnit report " + xmlFile, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns {@code passed}, {@code unresolved} or {@code failed}, as reported for the result.
+     */
+    static String outcomeOf(TestResults result) {
+        if (result.isPassed()) {
+            return "passed";
+        } else if (result.isNew()) {
+            return "unresolved";
+        } else if (result.isDifferent() || result.isAborted()) {
+            return "failed";
+        }
+        return "passed";
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            xml.flush();
+            xml.close();
+            xmlOut.write("</testsuite>\n");
+            xmlOut.close();
+            try (FileChannel channel = FileChannel.open(xmlFile, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(formatCounts().getBytes(StandardCharsets.UTF_8)), countsOffset);
+            }
+
+            json.endArray();
+            json.name("summary").beginObject();
+            json.name("total").value(total);
+            json.name("passed").value(passed);
+            json.name("unresolved").value(unresolved);
+            json.name("failed").value(failed);
+            json.name("exceptions").value(exceptions);
+            json.name("matches").value(matches);
+            json.name("mismatches").value(mismatches);
+            json.name("missing").value(missing);
+            json.endObject();
+            json.endObject();
+            json.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to finish result reports", e);
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Failed to finish JUnit report " + xmlFile, e);
+        } finally {
+            lock.unlock();
+        }
+        printSummary();
+    }
+
+    /**
+     * Returns the count attributes of the {@code <testsuite>}, padded to {@link #COUNTS_WIDTH} characters.
+     */
+    private String formatCounts() {
+        String counts = String.format("tests=\"%d\" failures=\"%d\" errors=\"%d\" skipped=\"0\"",
+                testCases, failed + unresolved, exceptions);
+        return counts + " ".repeat(COUNTS_WIDTH - counts.length());
+    }
+
+    private static String escapeAttribute(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '&' -> sb.append("&amp;");
+                case '<' -> sb.append("&lt;");
+                case '>' -> sb.append("&gt;");
+                case '"' -> sb.append("&quot;");
+                default -> sb.append(c < 0x20 ? ' ' : c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private void printSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Summary:\n");
+        sb.append("\tTotal Tests   : ").append(total).append("\n");
+        sb.append("\tPassed        : ").append(passed).append("\n");
+        sb.append("\tUnresolved    : ").append(unresolved).append("\n");
+        sb.append("\tFailed        : ").append(failed).append("\n");
+        sb.append("\tExceptions    : ").append(exceptions).append("\n");
+        sb.append("\tMatches       : ").append(matches).append("\n");
+        sb.append("\tMismatches    : ").append(mismatches).append("\n");
+        sb.append("\tMissing       : ").append(missing).append("\n");
+        sb.append("\tJUnit Report  : ").append(xmlFile.toAbsolutePath()).append("\n");
+        sb.append("\tJSON Report   : ").append(jsonFile.toAbsolutePath()).append("\n");
+        sb.append("==========================================================");
+        TestLog.info(sb.toString());
+    }
+
+    private static void appendResult(StringBuilder sb, TestResults result, RenderBrowserInfo browserInfo) {
+        sb.append("\tTest Name     : ").append(result.getName()).append("\n");
+
+        if (browserInfo != null) {
+            if (browserInfo.getEmulationInfo() != null && browserInfo.getEmulationInfo().getDeviceName() != null) {
+                sb.append("\tDevice        : ").append(browserInfo.getEmulationInfo().getDeviceName())
+                        .append(" [").append(browserInfo.getEmulationInfo().getScreenOrientation()).append("]\n");
+            } else {
+                sb.append("\tBrowser       : ").append(browserInfo.getBrowserType().getName())
+                        .append(" @ ").append(browserInfo.getPlatform()).append("\n");
+
+                RectangleSize vp = browserInfo.getViewportSize();
+                if (vp != null) {
+                    sb.append("\tViewport Size : ").append(vp.getWidth()).append("x").append(vp.getHeight()).append("\n");
+                } else {
+                    sb.append("\tViewport Size : not set\n");
+                }
+            }
+        }
+
+        sb.append("\tSteps         : ").append(result.getSteps()).append("\n");
+        sb.append("\tMatches       : ").append(result.getMatches()).append("\n");
+        sb.append("\tMismatches    : ").append(result.getMismatches()).append("\n");
+        sb.append("\tMissing       : ").append(result.getMissing()).append("\n");
+        sb.append("\tResult URL    : ").append(result.getUrl()).append("\n");
+        sb.append("\t-------------------------------------------------------------------------------\n");
+    }
+
+    private static String describeTarget(RenderBrowserInfo browserInfo) {
+        if (browserInfo == null) {
+            return "";
+        }
+        if (browserInfo.getEmulationInfo() != null && browserInfo.getEmulationInfo().getDeviceName() != null) {
+            return browserInfo.getEmulationInfo().getDeviceName() + " " + browserInfo.getEmulationInfo().getScreenOrientation();
+        }
+        RectangleSize vp = browserInfo.getViewportSize();
+        return browserInfo.getBrowserType().getName() + (vp != null ? " " + vp.getWidth() + "x" + vp.getHeight() : "");
+    }
+
+    private void writeResult(TestResults result, String target, String outcome) throws XMLStreamException, IOException {
+        String name = target.isEmpty() ? result.getName() : result.getName() + " [" + target + "]";
+        testCases++;
+
+        xml.writeCharacters("  ");
+        xml.writeStartElement("testcase");
+        xml.writeAttribute("classname", suiteName);
+        xml.writeAttribute("name", name);
+        xml.writeAttribute("time", Integer.toString(result.getDuration()));
+        if (!"passed".equals(outcome)) {
+            xml.writeStartElement("failure");
+            xml.writeAttribute("type", outcome);
+            xml.writeAttribute("message", String.format("%d mismatch(es), %d missing of %d step(s)",
+                    result.getMismatches(), result.getMissing(), result.getSteps()));
+            xml.writeCharacters(String.valueOf(result.getUrl()));
+            xml.writeEndElement();
+        }
+        xml.writeStartElement("system-out");
+        xml.writeCharacters("Result URL: " + result.getUrl());
+        xml.writeEndElement();
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+
+        json.beginObject();
+        json.name("name").value(result.getName());
+        json.name("target").value(target);
+        json.name("outcome").value(outcome);
+        json.name("steps").value(result.getSteps());
+        json.name("matches").value(result.getMatches());
+        json.name("mismatches").value(result.getMismatches());
+        json.name("missing").value(result.getMissing());
+        json.name("durationSeconds").value(result.getDuration());
+        json.name("url").value(result.getUrl());
+        json.endObject();
+        flush();
+    }
+
+    private void writeException(Throwable exception) throws XMLStreamException, IOException {
+        testCases++;
+        xml.writeCharacters("  ");
+        xml.writeStartElement("testcase");
+        xml.writeAttribute("classname", suiteName);
+        xml.writeAttribute("name", "exception-" + exceptions);
+        xml.writeStartElement("error");
+        xml.writeAttribute("type", exception.getClass().getName());
+        xml.writeAttribute("message", String.valueOf(exception.getMessage()));
+        xml.writeEndElement();
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+
+        json.beginObject();
+        json.name("outcome").value("exception");
+        json.name("error").value(String.valueOf(exception.getMessage()));
+        json.endObject();
+        flush();
+    }
+
+    private void flush() throws XMLStreamException, IOException {
+        // Keep the reports readable by CI even if the process dies before close()
+        xml.flush();
+        json.flush();
+    }
+}
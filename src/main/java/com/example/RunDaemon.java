@@ -0,0 +1,341 @@
+package com.example;
+
+import com.applitools.eyes.MatchLevel;
+import com.applitools.eyes.TestResultContainer;
+import com.applitools.eyes.TestResults;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Long-running process that keeps the JVM, the Playwright drivers, the pooled browsers and the Visual Grid
+ * runner warm, and runs the {@link ParallelTests} flows on request over a local HTTP endpoint.
+ * <p>
+ * Endpoints, all on 127.0.0.1:
+ * <pre>
+ *   POST /run       {"tests": [...], "batchName": "...", "appName": "...", "matchLevel": "..."}, all optional
+ *   GET  /health
+ *   POST /shutdown
+ * </pre>
+ * {@code /run} streams one JSON object per line: a {@code test} event as each test finishes, a {@code result}
+ * event per Applitools result of the run's batch, and a final {@code summary} event. Runs are executed one at
+ * a time; concurrent requests wait for their turn before their response starts.
+ * <p>
+ * {@code /run} and {@code /shutdown} require the header {@code Authorization: Bearer <token>}. The token is
+ * generated at startup and written to {@code daemon.tokenFile} (default {@code target/run-daemon.token}),
+ * readable by the owner only, so only processes of the user who started the daemon can drive it.
+ */
+public class RunDaemon {
+
+    private static final Gson gson = new Gson();
+
+    private final BrowserPool browserPool;
+    private final RunHistory runHistory;
+    private final Map<String, TestCase> tests = new LinkedHashMap<>();
+    private final int parallelism;
+    private final long timeoutSeconds;
+    private final ReentrantLock runLock = new ReentrantLock(true);
+    private final AtomicInteger runs = new AtomicInteger();
+    private final CountDownLatch shutdown = new CountDownLatch(1);
+    private final byte[] token;
+
+    /**
+     * Body of a {@code /run} request. Missing fields fall back to all tests and the configured defaults.
+     */
+    private static final class RunRequest {
+        private List<String> tests;
+        private String batchName;
+        private String appName;
+        private String matchLevel;
+    }
+
+    public RunDaemon(BrowserPool browserPool, RunHistory runHistory, List<TestCase> tests, int parallelism, long timeoutSeconds,
+                     String token) {
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+        this.browserPool = browserPool;
+        this.runHistory = runHistory;
+        this.parallelism = parallelism;
+        this.timeoutSeconds = timeoutSeconds;
+        for (TestCase test : tests) {
+            this.tests.put(test.getName(), test);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = Integer.getInteger("daemon.port", 7070);
+        int parallelism = TestScheduler.parallelismFromSystemProperties();
+        List<TestCase> tests = TestRegistry.discover(ParallelTests.class);
+        Path tokenFile = Paths.get(System.getProperty("daemon.tokenFile", "target/run-daemon.token"));
+        String token = writeToken(tokenFile);
+
+        try (RunHistory runHistory = RunHistory.fromSystemProperties();
+             BrowserPool browserPool = BrowserPool.fromSystemProperties(parallelism)) {
+            long warmUpStart = System.nanoTime();
+            ApplitoolsUtil.warmUp();
+            browserPool.warmUp();
+            TestLog.info("Warmed up %d browser(s) and the Visual Grid runner in %d ms",
+                    parallelism, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - warmUpStart));
+
+            RunDaemon daemon = new RunDaemon(browserPool, runHistory, tests, parallelism, TestScheduler.timeoutFromSystemProperties(), token);
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+            server.createContext("/run", daemon::handleRun);
+            server.createContext("/health", daemon::handleHealth);
+            server.createContext("/shutdown", daemon::handleShutdown);
+            server.start();
+            TestLog.info("Run daemon listening on http://127.0.0.1:%d with tests %s, token in %s",
+                    server.getAddress().getPort(), tests, tokenFile.toAbsolutePath());
+
+            daemon.awaitShutdown();
+            server.stop(1);
+        } finally {
+            Files.deleteIfExists(tokenFile);
+            ApplitoolsUtil.closeRunnerAndBatch();
+        }
+    }
+
+    /**
+     * Generates a random token and writes it to the file, readable by the owner only where the file system
+     * supports POSIX permissions.
+     */
+    private static String writeToken(Path tokenFile) throws IOException {
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        String token = HexFormat.of().formatHex(random);
+        Path parent = tokenFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.deleteIfExists(tokenFile);
+        try {
+            Files.createFile(tokenFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(tokenFile);
+        }
+        Files.writeString(tokenFile, token);
+        return token;
+    }
+
+    /**
+     * Responds with 401 unless the request carries the daemon's token.
+     *
+     * @return whether the request may proceed
+     */
+    private boolean authorize(HttpExchange exchange) throws IOException {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        byte[] presented = header != null && header.startsWith("Bearer ")
+                ? header.substring("Bearer ".length()).trim().getBytes(StandardCharsets.UTF_8)
+                : new byte[0];
+        if (MessageDigest.isEqual(token, presented)) {
+            return true;
+        }
+        respond(exchange, 401, "{\"error\":\"missing or wrong token, send Authorization: Bearer <token from daemon.tokenFile>\"}");
+        return false;
+    }
+
+    private void awaitShutdown() {
+        try {
+            shutdown.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Let a run that is still streaming finish before the browsers go away
+        runLock.lock();
+        runLock.unlock();
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        respond(exchange, 200, String.format("{\"status\":\"up\",\"runs\":%d,\"tests\":%s}", runs.get(), gson.toJson(tests.keySet())));
+    }
+
+    private void handleShutdown(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "{\"error\":\"use POST\"}");
+            return;
+        }
+        if (!authorize(exchange)) {
+            return;
+        }
+        respond(exchange, 200, "{\"status\":\"shutting down\"}");
+        shutdown.countDown();
+    }
+
+    private void handleRun(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "{\"error\":\"use POST\"}");
+            return;
+        }
+        if (!authorize(exchange)) {
+            return;
+        }
+        RunRequest request;
+        List<TestCase> selected;
+        MatchLevel matchLevel;
+        try (Reader body = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            request = Optional.ofNullable(gson.fromJson(body, RunRequest.class)).orElseGet(RunRequest::new);
+            selected = select(request.tests);
+            matchLevel = request.matchLevel == null ? null : EyesConfig.getEnumIgnoreCase(MatchLevel.class, request.matchLevel);
+        } catch (JsonParseException | IllegalArgumentException e) {
+            JsonObject error = new JsonObject();
+            error.addProperty("error", e.getMessage());
+            respond(exchange, 400, error.toString());
+            return;
+        }
+
+        // Only answer once the run can start, so a queued client is not told OK for a run that has not started
+        runLock.lock();
+        try (exchange) {
+            if (shutdown.getCount() == 0) {
+                respond(exchange, 503, "{\"error\":\"daemon is shutting down\"}");
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+            exchange.sendResponseHeaders(200, 0);
+            runAndStream(exchange, request, selected, matchLevel);
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    private void runAndStream(HttpExchange exchange, RunRequest request, List<TestCase> selected, MatchLevel matchLevel) {
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+            run(request, selected, matchLevel, out);
+        }
+    }
+
+    private void run(RunRequest request, List<TestCase> selected, MatchLevel matchLevel, PrintWriter out) {
+        int runNumber = runs.incrementAndGet();
+        String batchName = request.batchName != null ? request.batchName : "Playwright-Java tests (daemon run " + runNumber + ")";
+        String appName = request.appName != null ? request.appName : ParallelTests.appName;
+        long start = System.nanoTime();
+        TestLog.info("Daemon run %d: %d test(s), batch '%s', app '%s', match level %s",
+                runNumber, selected.size(), batchName, appName, matchLevel != null ? matchLevel : "as configured");
+
+        Map<TestRun.Status, Integer> statuses = new EnumMap<>(TestRun.Status.class);
+        ApplitoolsUtil.startBatch(batchName);
+        // The run's results only go to its own reports, which are complete once its summary is sent
+        ResultAggregator aggregator = new ResultAggregator(
+                Paths.get(System.getProperty("results.dir", "target/applitools-results")), "daemon-run-" + runNumber, batchName);
+        ApplitoolsUtil.setMatchLevelOverride(matchLevel);
+        try {
+            new TestScheduler(browserPool, appName, parallelism, timeoutSeconds)
+                    .setRunHistory(runHistory)
+                    .setListener(testRun -> {
+                        synchronized (out) {
+                            statuses.merge(testRun.getStatus(), 1, Integer::sum);
+                            emit(out, testEvent(testRun));
+                        }
+                    })
+                    .run(selected);
+            ApplitoolsUtil.reportBatchResults(container -> {
+                aggregator.accept(container);
+                synchronized (out) {
+                    emit(out, resultEvent(container));
+                }
+            });
+        } catch (RuntimeException e) {
+            JsonObject error = new JsonObject();
+            error.addProperty("event", "error");
+            error.addProperty("error", String.valueOf(e));
+            synchronized (out) {
+                emit(out, error);
+            }
+        } finally {
+            ApplitoolsUtil.setMatchLevelOverride(null);
+            ApplitoolsUtil.finishBatch();
+            aggregator.close();
+        }
+
+        JsonObject summary = new JsonObject();
+        summary.addProperty("event", "summary");
+        summary.addProperty("run", runNumber);
+        summary.addProperty("batchName", batchName);
+        summary.addProperty("tests", selected.size());
+        for (TestRun.Status status : TestRun.Status.values()) {
+            summary.addProperty(status.name().toLowerCase(), statuses.getOrDefault(status, 0));
+        }
+        summary.addProperty("durationMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        synchronized (out) {
+            emit(out, summary);
+        }
+    }
+
+    private List<TestCase> select(List<String> names) {
+        if (names == null || names.isEmpty()) {
+            return new ArrayList<>(tests.values());
+        }
+        List<TestCase> selected = new ArrayList<>();
+        for (String name : names) {
+            TestCase test = tests.get(name);
+            if (test == null) {
+                throw new IllegalArgumentException("Unknown test '" + name + "', known tests are " + tests.keySet());
+            }
+            selected.add(test);
+        }
+        return selected;
+    }
+
+    private static JsonObject testEvent(TestRun run) {
+        JsonObject event = new JsonObject();
+        event.addProperty("event", "test");
+        event.addProperty("name", run.getName());
+        event.addProperty("status", run.getStatus().name());
+        event.addProperty("durationMillis", run.getDurationMillis());
+        event.addProperty("steps", run.getSteps());
+        if (run.getError() != null) {
+            event.addProperty("error", String.valueOf(run.getError()));
+        }
+        return event;
+    }
+
+    private static JsonObject resultEvent(TestResultContainer container) {
+        JsonObject event = new JsonObject();
+        event.addProperty("event", "result");
+        TestResults result = container.getTestResults();
+        if (result == null) {
+            event.addProperty("outcome", "exception");
+            event.addProperty("error", String.valueOf(container.getException()));
+            return event;
+        }
+        event.addProperty("name", result.getName());
+        event.addProperty("outcome", ResultAggregator.outcomeOf(result));
+        event.addProperty("steps", result.getSteps());
+        event.addProperty("mismatches", result.getMismatches());
+        event.addProperty("missing", result.getMissing());
+        event.addProperty("url", result.getUrl());
+        return event;
+    }
+
+    private static void emit(PrintWriter out, JsonObject event) {
+        out.println(event);
+        out.flush();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = (json + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only, memory-mapped log of past test runs, used to predict how long each test will take.
+ * <p>
+ * Each record is {@code [short nameLength][name UTF-8][long epochMillis][long durationMillis][int steps][byte status]}.
+ * The file is grown in {@value #MAP_CHUNK_BYTES}-byte mapped chunks, so appending a record is a memory
+ * write rather than a system call. A zero name length marks the end of the data; the unused tail of the
+ * last chunk is truncated when the history is closed, and skipped if the process died before that.
+ */
+public class RunHistory implements AutoCloseable {
+
+    private static final int MAP_CHUNK_BYTES = 64 * 1024;
+    private static final int FIXED_RECORD_BYTES = Short.BYTES + Long.BYTES + Long.BYTES + Integer.BYTES + Byte.BYTES;
+    private static final double SMOOTHING = 0.3;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Map<String, Estimate> estimates = new HashMap<>();
+    private final Map<String, TestRun.Status> lastStatuses = new HashMap<>();
+    private MappedByteBuffer chunk;
+    private long chunkStart;
+    private long end;
+
+    /**
+     * Expected duration of a test, smoothed over its completed runs.
+     */
+    public static final class Estimate {
+
+        private double expectedMillis;
+        private int runs;
+        private int steps;
+
+        public long getExpectedMillis() {
+            return Math.round(expectedMillis);
+        }
+
+        public int getRuns() {
+            return runs;
+        }
+
+        public int getSteps() {
+            return steps;
+        }
+    }
+
+    public RunHistory(Path file) {
+        this.file = file;
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.end = readExisting();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open run history: " + file, e);
+        }
+    }
+
+    /**
+     * Opens the history file named by the {@code runHistory.file} system property, defaulting to
+     * {@code target/run-history.bin}.
+     */
+    public static RunHistory fromSystemProperties() {
+        return new RunHistory(Paths.get(System.getProperty("runHistory.file", "target/run-history.bin")));
+    }
+
+    /**
+     * Returns the estimate for the given test, or {@code null} if it has never completed.
+     */
+    public Estimate getEstimate(String testName) {
+        appendLock.lock();
+        try {
+            return estimates.get(testName);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the status of the test's last run, or {@code null} if it has never run.
+     */
+    public TestRun.Status getLastStatus(String testName) {
+        appendLock.lock();
+        try {
+            return lastStatuses.get(testName);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Orders tests longest-processing-time first. Tests without history are scheduled first,
+     * since their duration is unknown and they might be the longest ones.
+     */
+    public List<TestCase> orderLongestFirst(List<TestCase> tests) {
+        List<TestCase> ordered = new ArrayList<>(tests);
+        ordered.sort(Comparator.comparingLong(this::expectedMillisOrMax).reversed());
+        return ordered;
+    }
+
+    /**
+     * Bin-packs the tests onto the given number of workers, longest first, and prints the
+     * predicted load of each worker.
+     */
+    public void printPlan(List<TestCase> ordered, int workers) {
+        long[] loads = new long[Math.max(1, Math.min(workers, ordered.size()))];
+        int unknown = 0;
+        for (TestCase test : ordered) {
+            Estimate estimate = getEstimate(test.getName());
+            if (estimate == null) {
+                unknown++;
+                continue;
+            }
+            int leastLoaded = 0;
+            for (int i = 1; i < loads.length; i++) {
+                if (loads[i] < loads[leastLoaded]) {
+                    leastLoaded = i;
+                }
+            }
+            loads[leastLoaded] += estimate.getExpectedMillis();
+        }
+        long makespan = Arrays.stream(loads).max().orElse(0);
+        TestLog.info("Longest-first plan: %d test(s) on %d worker(s), %d without history, predicted worker loads %s ms, predicted makespan %d ms",
+                ordered.size(), loads.length, unknown, Arrays.toString(loads), makespan);
+    }
+
+    public void append(TestRun run) {
+        byte[] name = run.getName().getBytes(StandardCharsets.UTF_8);
+        if (name.length == 0 || name.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Test name cannot be stored in run history: '" + run.getName() + "'");
+        }
+        int recordBytes = FIXED_RECORD_BYTES + name.length;
+        long epochMillis = System.currentTimeMillis();
+        appendLock.lock();
+        try {
+            ensureMapped(recordBytes);
+            chunk.position((int) (end - chunkStart));
+            chunk.putShort((short) name.length);
+            chunk.put(name);
+            chunk.putLong(epochMillis);
+            chunk.putLong(run.getDurationMillis());
+            chunk.putInt(run.getSteps());
+            chunk.put((byte) run.getStatus().ordinal());
+            end += recordBytes;
+            update(run.getName(), run.getDurationMillis(), run.getSteps(), run.getStatus());
+        } catch (IOException e) {
+            TestLog.error("Failed to append to run history %s: %s", file, e.getMessage());
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        appendLock.lock();
+        try {
+            if (chunk != null) {
+                chunk.force();
+                chunk = null;
+            }
+            channel.truncate(end);
+            channel.close();
+        } catch (IOException e) {
+            TestLog.error("Failed to close run history %s: %s", file, e.getMessage());
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private long expectedMillisOrMax(TestCase test) {
+        Estimate estimate = getEstimate(test.getName());
+        return estimate == null ? Long.MAX_VALUE : estimate.getExpectedMillis();
+    }
+
+    private void ensureMapped(int recordBytes) throws IOException {
+        if (chunk == null || end + recordBytes > chunkStart + chunk.capacity()) {
+            chunkStart = end;
+            chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkStart, Math.max(MAP_CHUNK_BYTES, recordBytes));
+        }
+    }
+
+    private long readExisting() throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return 0;
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        TestRun.Status[] statuses = TestRun.Status.values();
+        int position = 0;
+        try {
+            while (buffer.remaining() >= FIXED_RECORD_BYTES) {
+                int nameLength = buffer.getShort();
+                if (nameLength <= 0) {
+                    break;
+                }
+                byte[] name = new byte[nameLength];
+                buffer.get(name);
+                buffer.getLong(); // epochMillis
+                long durationMillis = buffer.getLong();
+                int steps = buffer.getInt();
+                int status = buffer.get();
+                if (status < 0 || status >= statuses.length) {
+                    break;
+                }
+                update(new String(name, StandardCharsets.UTF_8), durationMillis, steps, statuses[status]);
+                position = buffer.position();
+            }
+        } catch (BufferUnderflowException e) {
+            // A partially written last record, ignore it
+        }
+        if (position < size) {
+            TestLog.info("Run history %s: ignoring %d trailing byte(s)", file, size - position);
+        }
+        return position;
+    }
+
+    private void update(String name, long durationMillis, int steps, TestRun.Status status) {
+        lastStatuses.put(name, status);
+        // Failed runs stop early and time-outs are capped, so only completed runs predict the duration. A test that
+        // has never completed keeps no estimate and is scheduled like a test without history
+        if (status != TestRun.Status.COMPLETED) {
+            return;
+        }
+        Estimate estimate = estimates.computeIfAbsent(name, key -> new Estimate());
+        estimate.expectedMillis = estimate.runs == 0
+                ? durationMillis
+                : SMOOTHING * durationMillis + (1 - SMOOTHING) * estimate.expectedMillis;
+        estimate.steps = steps;
+        estimate.runs++;
+    }
+}
@@ -1,94 +1,68 @@
 package com.example;
 
-import com.applitools.eyes.playwright.fluent.Target;
 import com.microsoft.playwright.*;
 
+import java.util.List;
+
 public class SequentialTests {
 
-    private static final String appName = "The Internet-Sequential";
+    static final String appName = "The Internet-Sequential";
 
     public static void main(String[] args) {
-        Playwright playwright = null;
-
-        try {
-            ApplitoolsUtil.startBatch(); // Optional final cleanup
-
-            playwright = Playwright.create();
-
-            testCheckboxNavigation(playwright);
-            testContextMenuNavigation(playwright);
+        List<TestCase> tests = TestRegistry.discover(SequentialTests.class);
 
+        try (BrowserPool browserPool = BrowserPool.fromSystemProperties(1)) {
+            ApplitoolsUtil.startBatch();
+            // One test at a time
+            new TestScheduler(browserPool, appName, 1, TestScheduler.timeoutFromSystemProperties()).run(tests);
         } finally {
-            if (playwright != null) {
-                playwright.close();
-            }
             ApplitoolsUtil.closeRunnerAndBatch(); // Optional final cleanup
         }
     }
 
     // ---------- Individual Tests ----------
 
-    private static void testCheckboxNavigation(Playwright playwright) {
-        Browser browser = launchBrowser(playwright);
-        Page page = browser.newPage();
-
-        try {
-            ApplitoolsUtil.initEyes(page, appName, "Checkbox Navigation Test", false);
-            navigateToHomepage(page);
-            openCheckboxesPage(page);
-            checkFirstCheckbox(page);
-            goBackToHomepage(page);
-        } finally {
-            ApplitoolsUtil.closeEyes(false);
-            browser.close();
-        }
-    }
-
-    private static void testContextMenuNavigation(Playwright playwright) {
-        Browser browser = launchBrowser(playwright);
-        Page page = browser.newPage();
-
-        try {
-            ApplitoolsUtil.initEyes(page, appName, "Context Menu Navigation Test", false);
-            navigateToHomepage(page);
-            openContextMenu(page);
-            goBackToHomepage(page);
-        } finally {
-            ApplitoolsUtil.closeEyes(false);
-            browser.close();
-        }
+    @VisualTest(name = "Checkbox Navigation Test")
+    static void testCheckboxNavigation(Page page) {
+        navigateToHomepage(page);
+        openCheckboxesPage(page);
+        checkFirstCheckbox(page);
+        goBackToHomepage(page);
     }
 
-    private static Browser launchBrowser(Playwright playwright) {
-        return playwright.chromium().launch(new BrowserType.LaunchOptions().setHeadless(false));
+    @VisualTest(name = "Context Menu Navigation Test")
+    static void testContextMenuNavigation(Page page) {
+        navigateToHomepage(page);
+        openContextMenu(page);
+        goBackToHomepage(page);
     }
 
     private static void navigateToHomepage(Page page) {
-        page.navigate("https://the-internet.herokuapp.com/");
-        ApplitoolsUtil.getEyes().check("Home", Target.window().fully());
+        PhaseTimings.time(PhaseTimings.PAGE_NAVIGATE, () -> page.navigate("https://the-internet.herokuapp.com/"));
+        ApplitoolsUtil.check("Home", CheckTarget.window());
     }
 
     private static void openCheckboxesPage(Page page) {
-        page.click("text=Checkboxes");
-        ApplitoolsUtil.getEyes().check("openCheckboxesPage", Target.window().fully());
-        ApplitoolsUtil.getEyes().check("openCheckboxesPage-region", Target.region("text=Checkboxes"));
+        PhaseTimings.time(PhaseTimings.PAGE_CLICK, () -> page.click("text=Checkboxes"));
+        ApplitoolsUtil.check("openCheckboxesPage", CheckTarget.window());
+        ApplitoolsUtil.check("openCheckboxesPage-region", CheckTarget.region("text=Checkboxes"));
     }
 
     private static void openContextMenu(Page page) {
-        page.click("text=Context Menu");
-        ApplitoolsUtil.getEyes().check("openContextMenu", Target.window().fully());
+        PhaseTimings.time(PhaseTimings.PAGE_CLICK, () -> page.click("text=Context Menu"));
+        ApplitoolsUtil.check("openContextMenu", CheckTarget.window());
     }
 
     private static void checkFirstCheckbox(Page page) {
         Locator firstCheckbox = page.locator("form#checkboxes input[type='checkbox']").first();
         if (!firstCheckbox.isChecked()) {
-            firstCheckbox.check();
+            PhaseTimings.time(PhaseTimings.PAGE_CHECK, firstCheckbox::check);
         }
-        ApplitoolsUtil.getEyes().check("checkFirstCheckbox", Target.window().fully());
+        ApplitoolsUtil.check("checkFirstCheckbox", CheckTarget.window());
     }
 
     private static void goBackToHomepage(Page page) {
-        page.goBack();
-        ApplitoolsUtil.getEyes().check("goBackToHomepage", Target.window().fully());
+        PhaseTimings.time(PhaseTimings.PAGE_GO_BACK, () -> page.goBack());
+        ApplitoolsUtil.check("goBackToHomepage", CheckTarget.window());
     }
 }
@@ -0,0 +1,415 @@
+package com.example;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Splits the {@link ParallelTests} suite across several worker JVMs.
+ * <p>
+ * The coordinator bin-packs the tests into one shard per worker, longest first, using the
+ * {@link RunHistory}, and serves them over a local socket. Workers pull their own shard first and
+ * steal the shortest remaining test of the most loaded shard once theirs is empty. Every worker
+ * joins the same Applitools batch through the batch ID the coordinator hands out.
+ * <p>
+ * Line protocol, one request per line:
+ * <pre>
+ *   worker: HELLO &lt;workerId&gt;
+ *   worker: NEXT                                       coordinator: TEST &lt;name&gt; | WAIT | DONE
+ *   worker: RESULT &lt;status&gt; &lt;durationMillis&gt; &lt;steps&gt; &lt;name&gt;
+ *   worker: STOP &lt;reason&gt;
+ * </pre>
+ * A test handed to a worker that disconnects before reporting it is given to another worker. {@code WAIT} means
+ * that no test is queued but some are still running on other workers and may be requeued, so the worker asks again
+ * later; {@code DONE} is only sent once no test is queued or running. The coordinator gives up when no worker has
+ * been connected for {@code shard.workerTimeoutSeconds}.
+ * <p>
+ * {@code STOP} is sent by a worker whose {@link FailFastPolicy} tripped. The coordinator then reports every queued
+ * test as {@code CANCELLED} and answers {@code DONE} to every worker; tests already running on other workers
+ * finish and are reported as usual, and tests of workers that disconnect are cancelled instead of requeued.
+ */
+public class ShardCoordinator {
+
+    static final String HELLO = "HELLO";
+    static final String NEXT = "NEXT";
+    static final String TEST = "TEST";
+    static final String WAIT = "WAIT";
+    static final String DONE = "DONE";
+    static final String RESULT = "RESULT";
+    static final String STOP = "STOP";
+
+    // Harness settings forwarded to spawned workers, as property names or name prefixes ending with '.'
+    private static final List<String> FORWARDED_PROPERTIES = List.of(
+            "browserPool.", "tests.", "eyes.", "network.", "metrics.", "flows.", "traces.", "checks.", "visual.",
+            "results.dir", "applitools.testConcurrency");
+
+    private final List<Deque<TestCase>> shards = new ArrayList<>();
+    private final Map<String, TestCase> inProgress = new HashMap<>();
+    private final List<TestRun> results = new ArrayList<>();
+    private final RunHistory runHistory;
+    private final int totalTests;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition allReported = lock.newCondition();
+    private int connectedWorkers;
+    private long idleSinceNanos = System.nanoTime();
+    private String stoppedEarly;
+
+    public ShardCoordinator(List<TestCase> tests, int workers, RunHistory runHistory) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Number of workers must be at least 1, but was: " + workers);
+        }
+        this.runHistory = runHistory;
+        this.totalTests = tests.size();
+        long[] loads = new long[workers];
+        for (int i = 0; i < workers; i++) {
+            shards.add(new ArrayDeque<>());
+        }
+        for (TestCase test : runHistory.orderLongestFirst(tests)) {
+            int leastLoaded = 0;
+            for (int i = 1; i < workers; i++) {
+                if (loads[i] < loads[leastLoaded]) {
+                    leastLoaded = i;
+                }
+            }
+            RunHistory.Estimate estimate = runHistory.getEstimate(test.getName());
+            // Without history, count a test as one unit so unknown tests are still spread out
+            loads[leastLoaded] += estimate == null ? 1 : Math.max(1, estimate.getExpectedMillis());
+            shards.get(leastLoaded).addLast(test);
+        }
+        for (int i = 0; i < workers; i++) {
+            TestLog.info("Shard %d: %d test(s), predicted %d ms: %s", i, shards.get(i).size(), loads[i], shards.get(i));
+        }
+    }
+
+    public static void main(String[] args) {
+        List<TestCase> tests = TestRegistry.discover(ParallelTests.class);
+        int workers = Integer.getInteger("shard.workers", 2);
+        int port = Integer.getInteger("shard.port", 0);
+        boolean spawnWorkers = Boolean.parseBoolean(System.getProperty("shard.spawnWorkers", "true"));
+        long workerTimeoutSeconds = Long.getLong("shard.workerTimeoutSeconds", 300);
+        String batchId = System.getProperty("applitools.batchId", System.getenv("APPLITOOLS_BATCH_ID"));
+        if (batchId == null || batchId.isBlank()) {
+            batchId = UUID.randomUUID().toString();
+        }
+
+        List<Process> processes = new ArrayList<>();
+        try (RunHistory runHistory = RunHistory.fromSystemProperties();
+             ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            ShardCoordinator coordinator = new ShardCoordinator(tests, workers, runHistory);
+            TestLog.info("Shard coordinator listening on 127.0.0.1:%d, batch ID: %s", server.getLocalPort(), batchId);
+            coordinator.acceptInBackground(server);
+            if (spawnWorkers) {
+                for (int i = 0; i < workers; i++) {
+                    processes.add(spawnWorker(i, server.getLocalPort(), batchId));
+                }
+            }
+            coordinator.awaitResults(processes, workerTimeoutSeconds);
+            coordinator.printSummary();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Shard coordinator failed", e);
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+    }
+
+    private void acceptInBackground(ServerSocket server) {
+        Thread acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    Thread handler = new Thread(() -> serve(socket), "shard-connection-" + socket.getPort());
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    if (!server.isClosed()) {
+                        TestLog.error("Failed to accept shard worker connection: %s", e.getMessage());
+                    }
+                }
+            }
+        }, "shard-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void serve(Socket socket) {
+        int workerId = -1;
+        List<String> assigned = new ArrayList<>();
+        connected();
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(HELLO + " ")) {
+                    workerId = Integer.parseInt(line.substring(HELLO.length() + 1).trim());
+                } else if (line.equals(NEXT)) {
+                    TestCase test = next(workerId);
+                    if (test != null) {
+                        assigned.add(test.getName());
+                        out.println(TEST + " " + test.getName());
+                    } else {
+                        out.println(isDrained() ? DONE : WAIT);
+                    }
+                } else if (line.startsWith(RESULT + " ")) {
+                    TestRun run = parseResult(line);
+                    assigned.remove(run.getName());
+                    report(run, workerId);
+                } else if (line.startsWith(STOP + " ")) {
+                    stopEarly(line.substring(STOP.length() + 1), workerId);
+                } else {
+                    TestLog.error("Ignoring unknown message from shard worker %d: %s", workerId, line);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            TestLog.error("Connection to shard worker %d failed: %s", workerId, e.getMessage());
+        } finally {
+            disconnected(assigned, workerId);
+        }
+    }
+
+    private TestCase next(int workerId) {
+        lock.lock();
+        try {
+            Deque<TestCase> own = workerId >= 0 && workerId < shards.size() ? shards.get(workerId) : null;
+            TestCase test = own != null ? own.pollFirst() : null;
+            if (test == null) {
+                Deque<TestCase> busiest = null;
+                for (Deque<TestCase> shard : shards) {
+                    if (!shard.isEmpty() && (busiest == null || shard.size() > busiest.size())) {
+                        busiest = shard;
+                    }
+                }
+                test = busiest != null ? busiest.pollLast() : null;
+            }
+            if (test != null) {
+                inProgress.put(test.getName(), test);
+            }
+            return test;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return whether nothing is left to hand out: the run was stopped early, or no test is queued or running
+     */
+    private boolean isDrained() {
+        lock.lock();
+        try {
+            return stoppedEarly != null || inProgress.isEmpty() && shards.stream().allMatch(Deque::isEmpty);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reports every queued test as cancelled, so no worker starts another one.
+     */
+    private void stopEarly(String reason, int workerId) {
+        lock.lock();
+        try {
+            if (stoppedEarly != null) {
+                return;
+            }
+            stoppedEarly = reason;
+            int queued = 0;
+            for (Deque<TestCase> shard : shards) {
+                TestCase test;
+                while ((test = shard.pollFirst()) != null) {
+                    results.add(new TestRun(test.getName(), TestRun.Status.CANCELLED, 0, 0, null));
+                    queued++;
+                }
+            }
+            TestLog.error("Shard worker %d stopped the run early: %s. Cancelled %d queued test(s)", workerId, reason, queued);
+            if (results.size() == totalTests) {
+                allReported.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void connected() {
+        lock.lock();
+        try {
+            connectedWorkers++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void report(TestRun run, int workerId) {
+        lock.lock();
+        try {
+            if (inProgress.remove(run.getName()) == null) {
+                TestLog.error("Ignoring result for a test that is not in progress: %s", run.getName());
+                return;
+            }
+            results.add(run);
+            runHistory.append(run);
+            TestLog.info("Worker %d finished '%s': %s in %d ms (%d/%d)",
+                    workerId, run.getName(), run.getStatus(), run.getDurationMillis(), results.size(), totalTests);
+            if (results.size() == totalTests) {
+                allReported.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void disconnected(List<String> unreported, int workerId) {
+        lock.lock();
+        try {
+            if (--connectedWorkers == 0) {
+                idleSinceNanos = System.nanoTime();
+            }
+            for (String name : unreported) {
+                TestCase test = inProgress.remove(name);
+                if (test == null) {
+                    continue;
+                }
+                if (stoppedEarly != null) {
+                    TestLog.error("Shard worker %d disconnected before reporting '%s', cancelling it", workerId, name);
+                    results.add(new TestRun(name, TestRun.Status.CANCELLED, 0, 0, null));
+                } else {
+                    TestLog.error("Shard worker %d disconnected before reporting '%s', requeueing it", workerId, name);
+                    shards.get(0).addFirst(test);
+                }
+            }
+            if (results.size() == totalTests) {
+                allReported.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitResults(List<Process> processes, long workerTimeoutSeconds) {
+        lock.lock();
+        try {
+            while (results.size() < totalTests) {
+                allReported.await(1, TimeUnit.SECONDS);
+                if (results.size() == totalTests) {
+                    break;
+                }
+                if (!processes.isEmpty() && processes.stream().noneMatch(Process::isAlive)) {
+                    TestLog.error("All shard workers exited with %d of %d test(s) reported", results.size(), totalTests);
+                    return;
+                }
+                // Workers started by hand are not watched as processes, only through their connections
+                if (connectedWorkers == 0 && System.nanoTime() - idleSinceNanos > TimeUnit.SECONDS.toNanos(workerTimeoutSeconds)) {
+                    TestLog.error("No shard worker connected for %ds, giving up with %d of %d test(s) reported",
+                            workerTimeoutSeconds, results.size(), totalTests);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+        for (Process process : processes) {
+            try {
+                process.waitFor(5, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void printSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n=== Sharded Test Execution Summary ===\n");
+        lock.lock();
+        try {
+            if (stoppedEarly != null) {
+                sb.append("\tStopped early : ").append(stoppedEarly).append("\n");
+            }
+            for (TestRun run : results) {
+                sb.append("\t").append(String.format("%-10s", run.getStatus()))
+                        .append(" ").append(String.format("%7d ms", run.getDurationMillis()))
+                        .append(" ").append(String.format("%3d steps", run.getSteps()))
+                        .append("  ").append(run.getName()).append("\n");
+            }
+            sb.append("\tReported      : ").append(results.size()).append(" of ").append(totalTests).append("\n");
+        } finally {
+            lock.unlock();
+        }
+        sb.append("==========================================================");
+        TestLog.info(sb.toString());
+    }
+
+    static String formatResult(TestRun run) {
+        return String.join(" ", RESULT, run.getStatus().name(), Long.toString(run.getDurationMillis()),
+                Integer.toString(run.getSteps()), run.getName());
+    }
+
+    static TestRun parseResult(String line) {
+        String[] parts = line.split(" ", 5);
+        if (parts.length != 5) {
+            throw new IllegalArgumentException("Malformed result: " + line);
+        }
+        return new TestRun(parts[4], TestRun.Status.valueOf(parts[1]), Long.parseLong(parts[2]), Integer.parseInt(parts[3]), null);
+    }
+
+    private static Process spawnWorker(int workerId, int port, String batchId) throws IOException {
+        Path java = Paths.get(System.getProperty("java.home"), "bin", "java");
+        List<String> command = new ArrayList<>();
+        command.add(java.toString());
+        // Forward the harness settings, so workers run the way the coordinator was configured
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (FORWARDED_PROPERTIES.stream().anyMatch(forwarded -> forwarded.endsWith(".") ? name.startsWith(forwarded) : name.equals(forwarded))) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        // Each worker writes its own JSON log next to the coordinator's, so the processes do not interleave lines
+        String jsonLog = System.getProperty("log.jsonFile");
+        if (jsonLog != null && !jsonLog.isBlank()) {
+            int extension = jsonLog.lastIndexOf('.');
+            boolean hasExtension = extension > Math.max(jsonLog.lastIndexOf('/'), jsonLog.lastIndexOf(File.separatorChar));
+            command.add("-Dlog.jsonFile=" + (hasExtension
+                    ? jsonLog.substring(0, extension) + "-worker-" + workerId + jsonLog.substring(extension)
+                    : jsonLog + "-worker-" + workerId));
+        }
+        command.add("-Dshard.coordinator=127.0.0.1:" + port);
+        command.add("-Dshard.workerId=" + workerId);
+        command.add("-Dapplitools.batchId=" + batchId);
+        command.add("-Dresults.name=applitools-results-worker-" + workerId);
+        command.add("-Dmetrics.name=phase-timings-worker-" + workerId);
+        command.add("-cp");
+        command.add(currentClasspath());
+        command.add(ShardWorker.class.getName());
+
+        TestLog.info("Spawning shard worker %d", workerId);
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    /**
+     * Returns the classpath this class was loaded from. Under {@code mvn exec:java} the project runs in
+     * a child class loader, so {@code java.class.path} only holds Maven's own launcher.
+     */
+    private static String currentClasspath() {
+        ClassLoader loader = ShardCoordinator.class.getClassLoader();
+        if (loader instanceof URLClassLoader) {
+            StringJoiner classpath = new StringJoiner(File.pathSeparator);
+            for (URL url : ((URLClassLoader) loader).getURLs()) {
+                try {
+                    classpath.add(Paths.get(url.toURI()).toString());
+                } catch (URISyntaxException | IllegalArgumentException e) {
+                    TestLog.error("Skipping classpath entry that is not a local file: %s", url);
+                }
+            }
+            return classpath.toString();
+        }
+        return System.getProperty("java.class.path");
+    }
+}
@@ -0,0 +1,92 @@
+package com.example;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Pulls tests from a {@link ShardCoordinator}, runs them and streams the results back.
+ * <p>
+ * A worker opens one connection to the coordinator and runs every test it pulls through one
+ * {@link TestScheduler}, up to {@code tests.parallelism} (default 1) at the same time, all sharing one
+ * {@link BrowserPool} and the batch given by {@code applitools.batchId}. While other workers still hold tests
+ * that could be requeued, the worker keeps asking for more instead of exiting. When the worker's
+ * {@link FailFastPolicy} trips, it stops asking and tells the coordinator, which cancels the queued tests of
+ * every worker.
+ */
+public class ShardWorker {
+
+    private static final long WAIT_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    public static void main(String[] args) {
+        String coordinator = System.getProperty("shard.coordinator");
+        if (coordinator == null || !coordinator.contains(":")) {
+            throw new IllegalArgumentException("Set -Dshard.coordinator=<host>:<port> to the coordinator's address");
+        }
+        String host = coordinator.substring(0, coordinator.lastIndexOf(':'));
+        int port = Integer.parseInt(coordinator.substring(coordinator.lastIndexOf(':') + 1));
+        int workerId = Integer.getInteger("shard.workerId", 0);
+        int flows = Integer.getInteger("tests.parallelism", 1);
+        long timeoutSeconds = TestScheduler.timeoutFromSystemProperties();
+        Map<String, TestCase> tests = TestRegistry.discover(ParallelTests.class).stream()
+                .collect(Collectors.toMap(TestCase::getName, Function.identity()));
+
+        try (BrowserPool browserPool = BrowserPool.fromSystemProperties(flows);
+             Socket socket = new Socket(host, port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            ApplitoolsUtil.startBatch();
+            out.println(ShardCoordinator.HELLO + " " + workerId);
+            new TestScheduler(browserPool, ParallelTests.appName, flows, timeoutSeconds)
+                    // PrintWriter.println is atomic, so results reported from several threads do not interleave
+                    .setListener(run -> out.println(ShardCoordinator.formatResult(run)))
+                    .setStopListener(reason -> out.println(ShardCoordinator.STOP + " " + reason))
+                    .run(() -> next(in, out, workerId, tests));
+        } catch (IOException e) {
+            TestLog.error("Shard worker %d could not reach the coordinator: %s", workerId, e.getMessage());
+        } finally {
+            ApplitoolsUtil.closeRunnerAndBatch();
+        }
+    }
+
+    /**
+     * Asks the coordinator for the next test, waiting while it has none to hand out yet.
+     *
+     * @return the test, or {@code null} once the coordinator is done or was lost
+     */
+    private static TestCase next(BufferedReader in, PrintWriter out, int workerId, Map<String, TestCase> tests) {
+        // One request at a time, so every reply is read by the thread that asked for it
+        synchronized (in) {
+            try {
+                while (true) {
+                    out.println(ShardCoordinator.NEXT);
+                    String reply = in.readLine();
+                    if (reply == null || reply.equals(ShardCoordinator.DONE)) {
+                        return null;
+                    }
+                    if (reply.equals(ShardCoordinator.WAIT)) {
+                        Thread.sleep(WAIT_MILLIS);
+                        continue;
+                    }
+                    String name = reply.substring(ShardCoordinator.TEST.length() + 1);
+                    TestCase test = tests.get(name);
+                    if (test != null) {
+                        return test;
+                    }
+                    TestLog.error("Shard worker %d does not know test '%s'", workerId, name);
+                    out.println(ShardCoordinator.formatResult(new TestRun(name, TestRun.Status.FAILED, 0, 0, null)));
+                }
+            } catch (IOException e) {
+                TestLog.error("Shard worker %d lost the coordinator: %s", workerId, e.getMessage());
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+}
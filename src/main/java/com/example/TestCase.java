@@ -0,0 +1,54 @@
+package com.example;
+
+import com.microsoft.playwright.Page;
+
+import java.util.function.Consumer;
+
+/**
+ * A single test flow registered with {@link TestRegistry}.
+ */
+public final class TestCase {
+
+    private final String name;
+    private final long timeoutSeconds;
+    private final boolean critical;
+    private final Consumer<Page> body;
+
+    public TestCase(String name, long timeoutSeconds, Consumer<Page> body) {
+        this(name, timeoutSeconds, false, body);
+    }
+
+    public TestCase(String name, long timeoutSeconds, boolean critical, Consumer<Page> body) {
+        this.name = name;
+        this.timeoutSeconds = timeoutSeconds;
+        this.critical = critical;
+        this.body = body;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the test's own deadline in seconds, or 0 or less to use the scheduler default
+     */
+    public long getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    /**
+     * @return whether a failure of this test stops the whole run
+     */
+    public boolean isCritical() {
+        return critical;
+    }
+
+    public void run(Page page) {
+        body.accept(page);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,251 @@
+package com.example;
+
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Log of the harness that keeps the output of parallel tests readable without contending on {@code System.out}.
+ * <p>
+ * Between {@link #begin} and {@link #end}, the lines logged by a thread are buffered in that thread and handed
+ * over as one block when the test ends. Lines logged outside a test are handed over right away. A single
+ * background writer takes the blocks from a lock-free queue and prints each one with a single write, in the
+ * order they were handed over, so the lines of different tests never interleave. With {@code log.jsonFile} set,
+ * the writer also appends every line as a JSON object to that file.
+ * <p>
+ * Output written directly to {@code System.out} is not ordered with this log; call {@link #flush()} before it.
+ */
+public final class TestLog {
+
+    private static final Queue<Block> queue = new ConcurrentLinkedQueue<>();
+    private static final ThreadLocal<Block> current = new ThreadLocal<>();
+    private static final AtomicLong enqueued = new AtomicLong();
+    private static final AtomicLong written = new AtomicLong();
+    private static final Thread writer;
+
+    static {
+        writer = new Thread(TestLog::drain, "test-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(TestLog::flush, "test-log-flush"));
+    }
+
+    private enum Level {
+        INFO, ERROR
+    }
+
+    /**
+     * One line of a block.
+     */
+    private static final class Line {
+
+        private final long timeMillis = System.currentTimeMillis();
+        private final Level level;
+        private final String message;
+
+        private Line(Level level, String message) {
+            this.level = level;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Lines printed together: the log of one test, or a single line logged outside a test.
+     */
+    private static final class Block {
+
+        private final String testName;
+        private final List<Line> lines = new ArrayList<>();
+
+        private Block(String testName) {
+            this.testName = testName;
+        }
+    }
+
+    private TestLog() {
+    }
+
+    /**
+     * Starts buffering the lines logged by the current thread for the test.
+     */
+    public static void begin(String testName) {
+        current.set(new Block(testName));
+    }
+
+    /**
+     * Hands the lines buffered since {@link #begin} over to the writer. Does nothing if no test was begun.
+     */
+    public static void end() {
+        Block block = current.get();
+        current.remove();
+        if (block != null && !block.lines.isEmpty()) {
+            enqueue(block);
+        }
+    }
+
+    /**
+     * Logs a line, formatted like {@link String#format}, to standard output.
+     */
+    public static void info(String format, Object... args) {
+        log(Level.INFO, args.length == 0 ? format : String.format(format, args));
+    }
+
+    /**
+     * Logs a line, formatted like {@link String#format}, to standard error.
+     */
+    public static void error(String format, Object... args) {
+        log(Level.ERROR, args.length == 0 ? format : String.format(format, args));
+    }
+
+    /**
+     * Logs a line, formatted like {@link String#format}, followed by the stack trace of the error to standard error.
+     */
+    public static void error(Throwable error, String format, Object... args) {
+        StringWriter stackTrace = new StringWriter();
+        error.printStackTrace(new PrintWriter(stackTrace));
+        log(Level.ERROR, (args.length == 0 ? format : String.format(format, args)) + "\n" + stackTrace.toString().stripTrailing());
+    }
+
+    /**
+     * Blocks until everything logged so far has been written, or for at most 5 seconds.
+     */
+    public static void flush() {
+        long target = enqueued.get();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (written.get() < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private static void log(Level level, String message) {
+        Block block = current.get();
+        if (block != null) {
+            block.lines.add(new Line(level, message));
+            return;
+        }
+        Block single = new Block(null);
+        single.lines.add(new Line(level, message));
+        enqueue(single);
+    }
+
+    private static void enqueue(Block block) {
+        queue.add(block);
+        enqueued.incrementAndGet();
+        LockSupport.unpark(writer);
+    }
+
+    private static void drain() {
+        Writer json = openJsonSink();
+        while (true) {
+            Block block = queue.poll();
+            if (block == null) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                continue;
+            }
+            try {
+                write(block, json);
+                if (queue.isEmpty()) {
+                    flushJson(json);
+                }
+            } catch (RuntimeException e) {
+                // Never let a bad line stop the writer
+                System.err.printf("Failed to write the log: %s%n", e);
+            } finally {
+                written.incrementAndGet();
+            }
+        }
+    }
+
+    private static void write(Block block, Writer json) {
+        StringBuilder out = new StringBuilder();
+        StringBuilder err = new StringBuilder();
+        if (block.testName != null) {
+            out.append("----- Log of test '").append(block.testName).append("' -----\n");
+        }
+        for (Line line : block.lines) {
+            // Errors of a test stay in its block, so they are read in context
+            StringBuilder target = line.level == Level.ERROR && block.testName == null ? err : out;
+            if (line.level == Level.ERROR && block.testName != null) {
+                target.append("[ERROR] ");
+            }
+            target.append(line.message).append('\n');
+            if (json != null) {
+                appendJson(json, block.testName, line);
+            }
+        }
+        print(System.out, out);
+        print(System.err, err);
+    }
+
+    private static void print(PrintStream stream, StringBuilder text) {
+        if (!text.isEmpty()) {
+            stream.print(text);
+            stream.flush();
+        }
+    }
+
+    /**
+     * Opens the {@code log.jsonFile} for appending, or returns {@code null} if it is not set.
+     */
+    private static Writer openJsonSink() {
+        String file = System.getProperty("log.jsonFile");
+        if (file == null || file.isBlank()) {
+            return null;
+        }
+        Path path = Paths.get(file.trim());
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            return Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.printf("Failed to open log file %s, logging to the console only: %s%n", path, e.getMessage());
+            return null;
+        }
+    }
+
+    private static void appendJson(Writer json, String testName, Line line) {
+        JsonObject object = new JsonObject();
+        object.addProperty("time", Instant.ofEpochMilli(line.timeMillis).toString());
+        object.addProperty("level", line.level.name());
+        if (testName != null) {
+            object.addProperty("test", testName);
+        }
+        object.addProperty("message", line.message);
+        try {
+            json.write(object.toString());
+            json.write('\n');
+        } catch (IOException e) {
+            System.err.printf("Failed to write the JSON log: %s%n", e.getMessage());
+        }
+    }
+
+    private static void flushJson(Writer json) {
+        if (json != null) {
+            try {
+                json.flush();
+            } catch (IOException e) {
+                System.err.printf("Failed to flush the JSON log: %s%n", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example;
+
+import com.microsoft.playwright.Page;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Discovers the {@link VisualTest} flows declared on a class, so new tests are picked up
+ * without editing the runner. A test is either a {@code static void method(Page)}, or a
+ * {@code static Flow method()} whose steps are run by a {@link FlowGraph} shared by all flows of the class.
+ */
+public final class TestRegistry {
+
+    private TestRegistry() {
+    }
+
+    /**
+     * Returns every {@link VisualTest} method of the given class, ordered by test name.
+     *
+     * @throws IllegalStateException if an annotated method has neither the {@code static void method(Page)} nor the
+     *                               {@code static Flow method()} shape, or if two tests share a name
+     */
+    public static List<TestCase> discover(Class<?> testClass) {
+        Map<String, TestCase> tests = new TreeMap<>();
+        Map<String, Flow> flows = new TreeMap<>();
+        // Flow tests are bound to the graph once all flows are known
+        FlowGraph[] graph = new FlowGraph[1];
+        for (Method method : testClass.getDeclaredMethods()) {
+            VisualTest annotation = method.getAnnotation(VisualTest.class);
+            if (annotation == null) {
+                continue;
+            }
+            validate(method);
+            method.setAccessible(true);
+            String name = annotation.name();
+            TestCase test;
+            if (method.getReturnType() == Flow.class) {
+                flows.put(name, (Flow) invoke(method));
+                test = new TestCase(name, annotation.timeoutSeconds(), annotation.critical(), page -> graph[0].run(name, page));
+            } else {
+                test = new TestCase(name, annotation.timeoutSeconds(), annotation.critical(), page -> invoke(method, page));
+            }
+            if (tests.put(test.getName(), test) != null) {
+                throw new IllegalStateException("Duplicate visual test name in " + testClass.getSimpleName() + ": " + test.getName());
+            }
+        }
+        graph[0] = FlowGraph.fromSystemProperties(flows);
+        TestLog.info("Discovered %d visual test(s) in %s: %s", tests.size(), testClass.getSimpleName(), tests.keySet());
+        return List.copyOf(tests.values());
+    }
+
+    private static void validate(Method method) {
+        boolean pageMethod = method.getReturnType() == void.class
+                && method.getParameterCount() == 1
+                && method.getParameterTypes()[0] == Page.class;
+        boolean flowMethod = method.getReturnType() == Flow.class && method.getParameterCount() == 0;
+        if (!Modifier.isStatic(method.getModifiers()) || !(pageMethod || flowMethod)) {
+            throw new IllegalStateException("@VisualTest method must be 'static void " + method.getName()
+                    + "(Page page)' or 'static Flow " + method.getName() + "()': " + method);
+        }
+    }
+
+    private static Object invoke(Method method, Object... args) {
+        try {
+            return method.invoke(null, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot invoke visual test: " + method, e);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.example;
+
+/**
+ * Outcome of executing one {@link TestCase}, as seen by the scheduler.
+ * Visual results are reported separately by the Visual Grid runner.
+ */
+public final class TestRun {
+
+    public enum Status {
+        COMPLETED, FAILED, TIMED_OUT, CANCELLED
+    }
+
+    private final String name;
+    private final Status status;
+    private final long durationMillis;
+    private final int steps;
+    private final Throwable error;
+
+    public TestRun(String name, Status status, long durationMillis, int steps, Throwable error) {
+        this.name = name;
+        this.status = status;
+        this.durationMillis = durationMillis;
+        this.steps = steps;
+        this.error = error;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * @return the number of visual checkpoints the test reached
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+}
@@ -0,0 +1,489 @@
+package com.example;
+
+import com.microsoft.playwright.Page;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs {@link TestCase}s either on a work-stealing {@link ForkJoinPool} or, in {@link ExecutionMode#VIRTUAL}
+ * mode, on one virtual thread per test. In both modes a {@link ConcurrencyLimiter} caps how many tests
+ * drive a browser at the same time; with {@code tests.adaptive=true} that cap is tuned while the tests run
+ * by {@link AdaptiveConcurrency}.
+ * <p>
+ * Every test gets its own deadline, which starts when the test starts running. When a test misses
+ * its deadline it is reported as timed out right away, without delaying any other test, and it is
+ * cancelled: its Eyes are aborted and its browser is closed instead of being returned to the pool.
+ * Playwright objects are only touched from the thread running the test, so the cancellation itself
+ * is carried out by that thread once its current (deadline-bounded) Playwright call returns: the next
+ * step, i.e. the next {@link PhaseTimings#time timed action}, checkpoint or {@link Flow} step, throws
+ * instead of running (see {@link #throwIfCancelled()}). {@link #run} waits for cancelled tests to stop,
+ * so nothing drives a browser or Eyes of the run once it has returned.
+ * With {@code traces.onFailure=true} every test is traced by a {@link FailureTrace}, which is only saved
+ * when the test fails or times out.
+ */
+public class TestScheduler {
+
+    private static final long DEFAULT_TIMEOUT_SECONDS = 60;
+
+    public enum ExecutionMode {
+        /**
+         * A fixed number of platform threads, one per concurrent test.
+         */
+        FORK_JOIN,
+        /**
+         * One virtual thread per test; blocking on the browser or on Eyes does not hold a platform thread.
+         */
+        VIRTUAL
+    }
+
+    private final BrowserPool browserPool;
+    private final String appName;
+    private final int parallelism;
+    private final long defaultTimeoutSeconds;
+    private final ExecutionMode executionMode;
+    private final ConcurrencyLimiter limiter;
+    private RunHistory runHistory;
+    private Consumer<TestRun> listener;
+    private Consumer<String> stopListener;
+    private FailFastPolicy failFastPolicy = FailFastPolicy.fromSystemProperties();
+
+    private static final ThreadLocal<InFlight> currentTest = new ThreadLocal<>();
+
+    /**
+     * Tests of one {@link #run} that have not finished yet.
+     */
+    private static final class RunState {
+
+        private final Queue<TestCase> pending;
+        private final Map<TestCase, CompletableFuture<TestRun>> results;
+        private final Map<TestCase, InFlight> inFlight = new ConcurrentHashMap<>();
+        private final ScheduledExecutorService watchdog;
+
+        private RunState(Queue<TestCase> pending, Map<TestCase, CompletableFuture<TestRun>> results, ScheduledExecutorService watchdog) {
+            this.pending = pending;
+            this.results = results;
+            this.watchdog = watchdog;
+        }
+    }
+
+    /**
+     * A test that is running, and how it was cancelled, if it was.
+     */
+    private static final class InFlight {
+
+        private final TestCase test;
+        private final CompletableFuture<TestRun> result;
+        // Created by the thread that runs the test
+        private final Thread thread = Thread.currentThread();
+        private final long start = System.nanoTime();
+        private final AtomicReference<TestRun.Status> cancelledAs = new AtomicReference<>();
+
+        private InFlight(TestCase test, CompletableFuture<TestRun> result) {
+            this.test = test;
+            this.result = result;
+        }
+
+        /**
+         * Reports the test with the status right away; its thread stops it at the next step.
+         *
+         * @return whether this call reported the test, i.e. it had not finished or been cancelled before
+         */
+        private boolean cancel(TestRun.Status status, Throwable reason) {
+            return cancelledAs.compareAndSet(null, status)
+                    && result.complete(new TestRun(test.getName(), status, elapsedMillis(start), 0, reason));
+        }
+    }
+
+    public TestScheduler(BrowserPool browserPool, String appName, int parallelism, long defaultTimeoutSeconds) {
+        this(browserPool, appName, parallelism, defaultTimeoutSeconds, ExecutionMode.FORK_JOIN);
+    }
+
+    public TestScheduler(BrowserPool browserPool, String appName, int parallelism, long defaultTimeoutSeconds, ExecutionMode executionMode) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, but was: " + parallelism);
+        }
+        this.browserPool = browserPool;
+        this.appName = appName;
+        this.parallelism = parallelism;
+        this.defaultTimeoutSeconds = defaultTimeoutSeconds;
+        this.executionMode = executionMode;
+        this.limiter = new ConcurrencyLimiter(parallelism);
+    }
+
+    /**
+     * Reads the number of concurrent tests from the {@code tests.parallelism} system property,
+     * defaulting to the number of available processors.
+     */
+    public static int parallelismFromSystemProperties() {
+        return Integer.getInteger("tests.parallelism", Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Reads the default per-test timeout from the {@code tests.timeoutSeconds} system property.
+     */
+    public static long timeoutFromSystemProperties() {
+        return Long.getLong("tests.timeoutSeconds", DEFAULT_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * Reads the execution mode from the {@code tests.executionMode} system property
+     * ({@code fork_join} or {@code virtual}), defaulting to {@link ExecutionMode#FORK_JOIN}.
+     */
+    public static ExecutionMode executionModeFromSystemProperties() {
+        String mode = System.getProperty("tests.executionMode", ExecutionMode.FORK_JOIN.name());
+        return EyesConfig.getEnumIgnoreCase(ExecutionMode.class, mode.trim());
+    }
+
+    public ConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Records every test run in the given history and uses it to start the longest tests first.
+     */
+    public TestScheduler setRunHistory(RunHistory runHistory) {
+        this.runHistory = runHistory;
+        return this;
+    }
+
+    /**
+     * Replaces the fail-fast policy read from the system properties by {@link FailFastPolicy#fromSystemProperties()}.
+     */
+    public TestScheduler setFailFastPolicy(FailFastPolicy failFastPolicy) {
+        this.failFastPolicy = failFastPolicy;
+        return this;
+    }
+
+    /**
+     * Throws if the test running on the current thread was cancelled, because it timed out or the run is being
+     * stopped early. Called before opening the test's Eyes, before every timed action and checkpoint and between
+     * {@link Flow} steps, so a cancelled test stops without touching the browser again, whether or not it is
+     * written as a flow. Does nothing outside a test.
+     *
+     * @throws CancellationException if the current test was cancelled
+     */
+    public static void throwIfCancelled() {
+        InFlight test = currentTest.get();
+        TestRun.Status status = test != null ? test.cancelledAs.get() : null;
+        if (status != null) {
+            throw new CancellationException("Test '" + test.test.getName() + "' was cancelled: " + status);
+        }
+    }
+
+    /**
+     * Notifies the listener of every test as soon as it has completed, failed or timed out.
+     * The listener is called from the thread that finished the test.
+     */
+    public TestScheduler setListener(Consumer<TestRun> listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Notifies the listener with the reason once the {@link FailFastPolicy} stops the run early, e.g. to stop the
+     * other shard workers too. The listener is called from the thread that finished the test that tripped the policy.
+     */
+    public TestScheduler setStopListener(Consumer<String> stopListener) {
+        this.stopListener = stopListener;
+        return this;
+    }
+
+    /**
+     * Runs all tests and blocks until each one has completed, failed, timed out or was cancelled because
+     * the {@link FailFastPolicy} stopped the run early, and until the threads of cancelled tests have stopped.
+     */
+    public List<TestRun> run(List<TestCase> tests) {
+        TestLog.info("Running %d test(s) in %s mode with parallelism %d", tests.size(), executionMode, parallelism);
+        ExecutorService workers = newWorkers();
+        ScheduledExecutorService watchdog = newWatchdog();
+
+        List<TestCase> ordered = tests;
+        if (runHistory != null) {
+            ordered = runHistory.orderLongestFirst(tests);
+            runHistory.printPlan(ordered, parallelism);
+        }
+
+        // Workers take the next test from this queue once they hold a permit, so tests start
+        // exactly in the planned order whatever order the executor runs its tasks in
+        Queue<TestCase> pending = new ConcurrentLinkedQueue<>(ordered);
+        Map<TestCase, CompletableFuture<TestRun>> results = new LinkedHashMap<>();
+        for (TestCase test : ordered) {
+            CompletableFuture<TestRun> result = new CompletableFuture<>();
+            if (listener != null) {
+                result.thenAccept(listener);
+            }
+            results.put(test, result);
+        }
+        RunState state = new RunState(pending, results, watchdog);
+        AdaptiveConcurrency adaptive = AdaptiveConcurrency.fromSystemProperties(limiter);
+        try {
+            for (int i = 0; i < ordered.size(); i++) {
+                workers.execute(() -> execute(state));
+            }
+            CompletableFuture.allOf(results.values().toArray(new CompletableFuture[0])).join();
+        } finally {
+            workers.shutdownNow();
+            // Cancelled tests were reported already but may still be finishing their current step
+            workers.close();
+            watchdog.shutdownNow();
+            if (adaptive != null) {
+                adaptive.close();
+            }
+        }
+
+        List<TestRun> runs = new ArrayList<>();
+        for (CompletableFuture<TestRun> result : results.values()) {
+            runs.add(result.join());
+        }
+        printSummary(runs, failFastPolicy.getReason());
+        return runs;
+    }
+
+    /**
+     * Runs the tests handed out by the source until it returns {@code null}, e.g. tests pulled one by one from a
+     * {@link ShardCoordinator}. Up to {@code parallelism} tests run at the same time, each taken from the source
+     * once a worker holds a permit. No more tests are taken once the {@link FailFastPolicy} has stopped the run early.
+     * Blocks until every test taken has completed, failed, timed out or was cancelled and its thread has stopped.
+     * The source is called from several threads, one call at a time per thread.
+     */
+    public List<TestRun> run(Supplier<TestCase> source) {
+        TestLog.info("Running pulled tests in %s mode with parallelism %d", executionMode, parallelism);
+        ExecutorService workers = newWorkers();
+        ScheduledExecutorService watchdog = newWatchdog();
+        // Nothing is queued here; stopping early only cancels the tests already running
+        RunState state = new RunState(new ConcurrentLinkedQueue<>(), Map.of(), watchdog);
+        List<CompletableFuture<TestRun>> results = Collections.synchronizedList(new ArrayList<>());
+        AdaptiveConcurrency adaptive = AdaptiveConcurrency.fromSystemProperties(limiter);
+        try {
+            for (int i = 0; i < parallelism; i++) {
+                workers.execute(() -> pullAndExecute(source, results, state));
+            }
+        } finally {
+            // Waits for every worker to run out of tests
+            workers.close();
+            watchdog.shutdownNow();
+            if (adaptive != null) {
+                adaptive.close();
+            }
+        }
+
+        List<TestRun> runs = new ArrayList<>();
+        for (CompletableFuture<TestRun> result : results) {
+            runs.add(result.join());
+        }
+        printSummary(runs, failFastPolicy.getReason());
+        return runs;
+    }
+
+    private ExecutorService newWorkers() {
+        return executionMode == ExecutionMode.VIRTUAL
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : new ForkJoinPool(parallelism);
+    }
+
+    private static ScheduledExecutorService newWatchdog() {
+        return Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "test-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void pullAndExecute(Supplier<TestCase> source, List<CompletableFuture<TestRun>> results, RunState state) {
+        while (true) {
+            try {
+                limiter.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                if (failFastPolicy.isTripped()) {
+                    return;
+                }
+                TestCase test = source.get();
+                if (test == null) {
+                    return;
+                }
+                CompletableFuture<TestRun> result = new CompletableFuture<>();
+                if (listener != null) {
+                    result.thenAccept(listener);
+                }
+                results.add(result);
+                executeWithDeadline(test, result, state);
+            } finally {
+                limiter.release();
+            }
+        }
+    }
+
+    private void execute(RunState state) {
+        try {
+            limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            TestCase test = state.pending.poll();
+            if (test != null) {
+                state.results.get(test).complete(new TestRun(test.getName(), TestRun.Status.FAILED, 0, 0, e));
+            }
+            return;
+        }
+        try {
+            // Empty once the run was stopped early
+            TestCase test = state.pending.poll();
+            if (test != null) {
+                executeWithDeadline(test, state.results.get(test), state);
+            }
+        } finally {
+            limiter.release();
+        }
+    }
+
+    private void executeWithDeadline(TestCase test, CompletableFuture<TestRun> result, RunState state) {
+        // Buffer the test's log, so it is printed as one block instead of interleaving with the other tests
+        TestLog.begin(test.getName());
+        InFlight inFlight = new InFlight(test, result);
+        state.inFlight.put(test, inFlight);
+        currentTest.set(inFlight);
+        try {
+            executeLogged(inFlight, state);
+        } finally {
+            currentTest.remove();
+            state.inFlight.remove(test);
+            TestLog.end();
+        }
+    }
+
+    private void executeLogged(InFlight inFlight, RunState state) {
+        TestCase test = inFlight.test;
+        long timeoutSeconds = test.getTimeoutSeconds() > 0 ? test.getTimeoutSeconds() : defaultTimeoutSeconds;
+        long start = inFlight.start;
+        AtomicReference<TestRun.Status> cancelled = inFlight.cancelledAs;
+        ScheduledFuture<?> deadline = state.watchdog.schedule(() -> {
+            if (inFlight.cancel(TestRun.Status.TIMED_OUT, new TimeoutException("Test exceeded its deadline of " + timeoutSeconds + "s"))) {
+                TestLog.error("Test '%s' timed out after %ds, cancelling it", test.getName(), timeoutSeconds);
+                applyFailFastPolicy(state, inFlight.result.join(), test, false);
+            }
+        }, timeoutSeconds, TimeUnit.SECONDS);
+
+        Throwable error = null;
+        boolean threw = false;
+        int steps = 0;
+        try (BrowserPool.Lease lease = browserPool.lease(test.getName())) {
+            FailureTrace trace = FailureTrace.start(lease.context(), test.getName());
+            try {
+                Page page = lease.page();
+                // Bound every Playwright call by the test's deadline, so a cancelled test cannot block its worker forever
+                page.setDefaultTimeout(TimeUnit.SECONDS.toMillis(timeoutSeconds));
+                // The test may have been cancelled while it waited for a browser
+                throwIfCancelled();
+                ApplitoolsUtil.initEyes(page, appName, test.getName());
+                test.run(page);
+            } catch (Throwable t) {
+                error = t;
+                threw = true;
+            } finally {
+                steps = ApplitoolsUtil.getStepCount();
+                try {
+                    if (cancelled.get() != null) {
+                        ApplitoolsUtil.abortEyes();
+                        if (cancelled.get() == TestRun.Status.TIMED_OUT) {
+                            lease.discardBrowser();
+                        }
+                    } else {
+                        // A critical test waits for its renders, so its visual mismatches can stop the run
+                        ApplitoolsUtil.closeEyes(test.isCritical());
+                    }
+                } catch (Throwable t) {
+                    if (error == null) {
+                        error = t;
+                    }
+                }
+                // The trace has to be saved before the lease closes its context
+                if (trace != null) {
+                    trace.stop(cancelled.get() == TestRun.Status.TIMED_OUT ? "timed out after " + timeoutSeconds + "s"
+                            : cancelled.get() == null && error != null ? String.valueOf(error) : null);
+                }
+            }
+        } catch (Throwable t) {
+            if (error == null) {
+                error = t;
+            }
+        } finally {
+            deadline.cancel(false);
+        }
+
+        TestRun.Status status = cancelled.get() != null ? cancelled.get()
+                : error == null ? TestRun.Status.COMPLETED : TestRun.Status.FAILED;
+        TestRun run = new TestRun(test.getName(), status, elapsedMillis(start), steps, error);
+        // A cancelled test did not run to its end, so its duration would mislead the next plan
+        if (runHistory != null && status != TestRun.Status.CANCELLED) {
+            runHistory.append(run);
+        }
+        if (inFlight.result.complete(run)) {
+            if (error != null) {
+                TestLog.error("Test '%s' failed: %s", test.getName(), error);
+            }
+            applyFailFastPolicy(state, run, test, threw);
+        }
+    }
+
+    private void applyFailFastPolicy(RunState state, TestRun run, TestCase test, boolean threw) {
+        String reason = failFastPolicy.onFinished(run, test.isCritical(), threw);
+        if (reason != null) {
+            stopEarly(state, reason);
+            if (stopListener != null) {
+                stopListener.accept(reason);
+            }
+        }
+    }
+
+    /**
+     * Reports every queued and running test as cancelled, aborts the Eyes of the running ones right away, so the
+     * Visual Grid runner drops their queued renders, and drops the checkpoints that are not submitted yet.
+     * Running tests stop once their current step returns; {@link #run} waits for them to stop.
+     */
+    private static void stopEarly(RunState state, String reason) {
+        TestLog.error("Stopping the run early: %s", reason);
+        CancellationException cause = new CancellationException("Run stopped early: " + reason);
+        int queued = 0;
+        TestCase test;
+        while ((test = state.pending.poll()) != null) {
+            state.results.get(test).complete(new TestRun(test.getName(), TestRun.Status.CANCELLED, 0, 0, cause));
+            queued++;
+        }
+        int running = 0;
+        for (InFlight inFlight : state.inFlight.values()) {
+            if (inFlight.cancel(TestRun.Status.CANCELLED, cause)) {
+                ApplitoolsUtil.abortEyes(inFlight.thread);
+                running++;
+            }
+        }
+        TestLog.error("Cancelled %d queued and %d running test(s)", queued, running);
+        ApplitoolsUtil.cancelPendingChecks(reason);
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static void printSummary(List<TestRun> runs, String stoppedEarly) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n=== Test Execution Summary ===\n");
+        if (stoppedEarly != null) {
+            sb.append("\tStopped early: ").append(stoppedEarly).append("\n");
+        }
+        for (TestRun run : runs) {
+            sb.append("\t").append(String.format("%-10s", run.getStatus()))
+                    .append(" ").append(String.format("%7d ms", run.getDurationMillis()))
+                    .append(" ").append(String.format("%3d steps", run.getSteps()))
+                    .append("  ").append(run.getName()).append("\n");
+        }
+        sb.append("==========================================================");
+        TestLog.info(sb.toString());
+    }
+}
@@ -0,0 +1,32 @@
+package com.example;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a static {@code void method(Page page)}, or a static {@code Flow method()} returning the test's steps,
+ * as a visual test flow that {@link TestRegistry} can discover.
+ * The scheduler leases the page, opens and closes Eyes around the method, and enforces the timeout.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface VisualTest {
+
+    /**
+     * Test name reported to Applitools.
+     */
+    String name();
+
+    /**
+     * Per-test deadline in seconds. A value of 0 or less uses the scheduler's default timeout.
+     */
+    long timeoutSeconds() default 0;
+
+    /**
+     * Whether a failure of this test, including a visual mismatch, stops the whole run (see {@link FailFastPolicy}).
+     * A critical test waits for its own visual results when it closes its Eyes.
+     */
+    boolean critical() default false;
+}